@@ -9,6 +9,8 @@ class Room {
   final String name;
   final int createdAt;
   final List<String> memberIds;
+  // 房间列表和搜索只返回摘要，不包含转账记录
+  @JsonKey(defaultValue: <Transaction>[])
   final List<Transaction> transactions;
 
   Room({
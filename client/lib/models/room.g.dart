@@ -12,9 +12,10 @@ Room _$RoomFromJson(Map<String, dynamic> json) => Room(
       createdAt: (json['createdAt'] as num).toInt(),
       memberIds:
           (json['memberIds'] as List<dynamic>).map((e) => e as String).toList(),
-      transactions: (json['transactions'] as List<dynamic>)
-          .map((e) => Transaction.fromJson(e as Map<String, dynamic>))
-          .toList(),
+      transactions: (json['transactions'] as List<dynamic>?)
+              ?.map((e) => Transaction.fromJson(e as Map<String, dynamic>))
+              .toList() ??
+          [],
     );
 
 Map<String, dynamic> _$RoomToJson(Room instance) => <String, dynamic>{
@@ -0,0 +1,82 @@
+package com.cardscore.bench;
+
+import com.cardscore.json.JsonCodec;
+import com.cardscore.model.*;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比反射Gson与手写TypeAdapter的请求解析和响应序列化
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int transactions;
+
+    private Gson reflective;
+    private Gson typed;
+    private RoomDetail detail;
+    private Map<String, Object> detailMap;
+    private byte[] transactionBody;
+
+    @Setup
+    public void setup() {
+        reflective = new Gson();
+        typed = JsonCodec.create();
+
+        Random random = new Random(42);
+        List<User> members = Fixtures.users(4);
+        Room room = Fixtures.room(random, members, transactions);
+        detail = new RoomDetail(room, members, room.getScores());
+
+        detailMap = new HashMap<>();
+        detailMap.put("room", room);
+        detailMap.put("members", members);
+        detailMap.put("scores", room.getScores());
+
+        transactionBody = ("{\"roomId\":\"" + room.getId() + "\",\"fromUserId\":\"" + members.get(0).getId()
+                + "\",\"toUserId\":\"" + members.get(1).getId() + "\",\"amount\":10}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String serializeDetailReflective() {
+        return reflective.toJson(ApiResponse.success(detailMap));
+    }
+
+    @Benchmark
+    public String serializeDetailTyped() {
+        return JsonCodec.toJson(typed, ApiResponse.success(detail));
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void parseTransactionReflective(Blackhole bh) {
+        Map<String, Object> body = reflective.fromJson(new String(transactionBody, StandardCharsets.UTF_8), Map.class);
+        bh.consume(body.get("roomId"));
+        bh.consume(((Double) body.get("amount")).intValue());
+    }
+
+    @Benchmark
+    public void parseTransactionTyped(Blackhole bh) throws Exception {
+        CreateTransactionRequest body = JsonCodec.read(typed,
+                new ByteArrayInputStream(transactionBody), CreateTransactionRequest.class);
+        bh.consume(body.getRoomId());
+        bh.consume(body.getAmount());
+    }
+}
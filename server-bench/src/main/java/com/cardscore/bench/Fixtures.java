@@ -0,0 +1,93 @@
+package com.cardscore.bench;
+
+import com.cardscore.model.Room;
+import com.cardscore.model.Transaction;
+import com.cardscore.model.User;
+import com.cardscore.storage.StorageConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试数据生成
+ */
+public final class Fixtures {
+    private static final String[] ROOM_NAMES = {"周五斗地主", "周末麻将局", "Friday Poker", "掼蛋小分队", "Texas Night"};
+
+    private Fixtures() {
+    }
+
+    public static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            users.add(new User(UUID.randomUUID().toString(), "玩家" + i, now + i));
+        }
+        return users;
+    }
+
+    /**
+     * 生成一个房间，成员从给定用户中选取，包含指定数量的随机转账
+     */
+    public static Room room(Random random, List<User> members, int transactions) {
+        long now = System.currentTimeMillis();
+        Room room = new Room(UUID.randomUUID().toString(),
+                ROOM_NAMES[random.nextInt(ROOM_NAMES.length)] + random.nextInt(100000), now);
+        for (User member : members) {
+            room = room.withMember(member.getId());
+        }
+        List<Transaction> added = new ArrayList<>(transactions);
+        for (int i = 0; i < transactions; i++) {
+            String from = members.get(random.nextInt(members.size())).getId();
+            String to = members.get(random.nextInt(members.size())).getId();
+            added.add(new Transaction(UUID.randomUUID().toString(), room.getId(),
+                    from, to, 1 + random.nextInt(100), now + i));
+        }
+        return room.withTransactions(added);
+    }
+
+    /**
+     * 在临时目录中使用的延迟写入配置：数据只在显式保存时写盘，避免事务日志干扰测量
+     */
+    public static StorageConfig storageConfig(Path dataDir) {
+        return storageConfig(dataDir, StorageConfig.Format.JSON);
+    }
+
+    public static StorageConfig storageConfig(Path dataDir, StorageConfig.Format format) {
+        StorageConfig config = new StorageConfig();
+        config.setFormat(format);
+        config.setDataDir(dataDir.toString());
+        config.setWriteBehind(true);
+        config.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        config.setFlushThreshold(Integer.MAX_VALUE);
+        return config;
+    }
+
+    public static Path tempDir(String prefix) {
+        try {
+            return Files.createTempDirectory(prefix);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void deleteRecursively(Path dir) {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
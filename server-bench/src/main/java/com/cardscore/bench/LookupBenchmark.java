@@ -0,0 +1,76 @@
+package com.cardscore.bench;
+
+import com.cardscore.model.Page;
+import com.cardscore.model.Room;
+import com.cardscore.model.RoomSummary;
+import com.cardscore.model.User;
+import com.cardscore.storage.LocalStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存索引查询：房间名搜索与按用户名查找
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int rooms;
+
+    private Path dataDir;
+    private LocalStorage storage;
+    private List<User> users;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataDir = Fixtures.tempDir("cardscore-bench");
+        storage = new LocalStorage(Fixtures.storageConfig(dataDir));
+
+        Random random = new Random(42);
+        users = Fixtures.users(Math.max(4, rooms / 10));
+        for (User user : users) {
+            storage.addUser(user);
+        }
+        for (int i = 0; i < rooms; i++) {
+            int offset = random.nextInt(users.size() - 3);
+            Room room = Fixtures.room(random, users.subList(offset, offset + 4), 0);
+            storage.addRoom(room);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Fixtures.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public Page<RoomSummary> searchRoomsCommonKeyword() {
+        return storage.searchRooms("麻将", null, 20, LocalStorage.SORT_RECENT);
+    }
+
+    @Benchmark
+    public Page<RoomSummary> searchRoomsSelectiveKeyword() {
+        return storage.searchRooms("poker 123", null, 20, LocalStorage.SORT_RECENT);
+    }
+
+    @Benchmark
+    public Page<RoomSummary> searchRoomsByMembers() {
+        return storage.searchRooms("掼蛋", null, 20, LocalStorage.SORT_MEMBERS);
+    }
+
+    @Benchmark
+    public User getUserByName() {
+        User user = users.get(next++ % users.size());
+        return storage.getUserByName(user.getName());
+    }
+}
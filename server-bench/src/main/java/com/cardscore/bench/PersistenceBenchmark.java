@@ -0,0 +1,75 @@
+package com.cardscore.bench;
+
+import com.cardscore.model.Room;
+import com.cardscore.model.User;
+import com.cardscore.storage.LocalStorage;
+import com.cardscore.storage.StorageConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全量保存房间文件与启动时加载数据（在临时目录中进行），分别使用JSON和二进制格式
+ * 启动时只读取房间索引，房间文件在第一次访问时加载
+ * 100万房间会在磁盘上生成100万个文件，需要时通过 -p rooms=1000000 单独运行
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+    @Param({"100", "10000"})
+    public int rooms;
+
+    @Param({"10"})
+    public int transactionsPerRoom;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private Path dataDir;
+    private LocalStorage storage;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataDir = Fixtures.tempDir("cardscore-bench");
+        storage = new LocalStorage(Fixtures.storageConfig(dataDir, StorageConfig.Format.parse(format)));
+
+        Random random = new Random(42);
+        List<User> users = Fixtures.users(Math.max(4, rooms / 2));
+        for (User user : users) {
+            storage.addUser(user);
+        }
+        for (int i = 0; i < rooms; i++) {
+            int offset = random.nextInt(users.size() - 3);
+            Room room = Fixtures.room(random, users.subList(offset, offset + 4), transactionsPerRoom);
+            storage.addRoom(room);
+        }
+        storage.saveUsers();
+        storage.saveRooms();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Fixtures.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public long saveRooms() {
+        return storage.saveRooms();
+    }
+
+    @Benchmark
+    public int loadRooms() {
+        LocalStorage loaded = new LocalStorage(Fixtures.storageConfig(dataDir, StorageConfig.Format.parse(format)));
+        int count = loaded.getRoomCount();
+        loaded.close();
+        return count;
+    }
+}
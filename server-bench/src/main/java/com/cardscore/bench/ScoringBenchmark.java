@@ -0,0 +1,43 @@
+package com.cardscore.bench;
+
+import com.cardscore.model.Room;
+import com.cardscore.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分数计算：完整重放转账记录与读取增量维护的余额
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScoringBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int transactions;
+
+    private Room room;
+
+    @Setup
+    public void setup() {
+        List<User> members = Fixtures.users(8);
+        room = Fixtures.room(new Random(42), members, transactions);
+    }
+
+    @Benchmark
+    public Map<String, Integer> calculateScores() {
+        return room.calculateScores();
+    }
+
+    @Benchmark
+    public Map<String, Integer> getScores() {
+        return room.getScores();
+    }
+}
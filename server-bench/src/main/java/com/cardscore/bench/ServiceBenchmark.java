@@ -0,0 +1,72 @@
+package com.cardscore.bench;
+
+import com.cardscore.controller.RoomEventStream;
+import com.cardscore.json.JsonCodec;
+import com.cardscore.model.Room;
+import com.cardscore.model.RoomDetail;
+import com.cardscore.model.TransactionDetail;
+import com.cardscore.model.User;
+import com.cardscore.service.CardScoreService;
+import com.cardscore.service.RoomEventBus;
+import com.cardscore.storage.LocalStorage;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 房间详情与转账详情的组装
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int transactions;
+
+    private Path dataDir;
+    private LocalStorage storage;
+    private RoomEventBus eventBus;
+    private CardScoreService service;
+    private String roomId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataDir = Fixtures.tempDir("cardscore-bench");
+        storage = new LocalStorage(Fixtures.storageConfig(dataDir));
+        Gson gson = JsonCodec.create();
+        eventBus = new RoomEventBus(event -> RoomEventStream.encode(gson, event));
+        service = new CardScoreService(storage, eventBus);
+
+        List<User> members = Fixtures.users(8);
+        for (User user : members) {
+            storage.addUser(user);
+        }
+        Room room = Fixtures.room(new Random(42), members, transactions);
+        storage.addRoom(room);
+        roomId = room.getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        eventBus.shutdown();
+        Fixtures.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public RoomDetail getRoomDetail() throws Exception {
+        return service.getRoomDetail(roomId);
+    }
+
+    @Benchmark
+    public List<TransactionDetail> getTransactionDetails() throws Exception {
+        return service.getTransactionDetails(roomId);
+    }
+}
@@ -0,0 +1,41 @@
+package com.cardscore.loadtest;
+
+import com.cardscore.metrics.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个接口的延迟分布和错误数
+ */
+public class EndpointStats {
+    private final String name;
+    private final Histogram latency = new Histogram();
+    private final LongAdder errors = new LongAdder();
+
+    public EndpointStats(String name) {
+        this.name = name;
+    }
+
+    public void record(long durationNanos, boolean error) {
+        latency.record(durationNanos);
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public double percentileMillis(double quantile) {
+        return latency.percentile(quantile) / 1_000_000.0;
+    }
+}
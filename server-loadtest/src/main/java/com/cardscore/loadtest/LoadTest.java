@@ -0,0 +1,150 @@
+package com.cardscore.loadtest;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测工具：模拟 R 个房间 × P 个玩家的真实流量，
+ * 登录、创建/加入房间、记分，并每隔几秒轮询房间详情；结束后输出各接口的吞吐量、延迟分位数和错误率
+ *
+ * 先启动服务端，再运行：
+ * java -jar server-loadtest/target/loadtest.jar --url=http://localhost:8080 --rooms=100 --players=4 --duration=60
+ */
+public class LoadTest {
+    private static final String[] ENDPOINTS = {"login", "createRoom", "join", "transaction", "detail"};
+    private static final long REPORT_INTERVAL_MS = 10_000;
+
+    private final LoadTestConfig config;
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    public LoadTest(LoadTestConfig config) {
+        this.config = config;
+        for (String endpoint : ENDPOINTS) {
+            stats.put(endpoint, new EndpointStats(endpoint));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config;
+        try {
+            config = LoadTestConfig.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java -jar loadtest.jar [--url=http://localhost:8080] [--rooms=10] [--players=4]"
+                    + " [--duration=60] [--ramp-up=10] [--think-ms=5000] [--poll-ms=3000] [--etag=false]");
+            System.exit(1);
+            return;
+        }
+        new LoadTest(config).run();
+    }
+
+    public LoadTestConfig getConfig() {
+        return config;
+    }
+
+    void record(String endpoint, long durationNanos, boolean error) {
+        stats.get(endpoint).record(durationNanos, error);
+    }
+
+    public void run() throws InterruptedException {
+        int clients = config.getRooms() * config.getPlayers();
+        ExecutorService executor = newPlayerExecutor();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        System.out.println("Starting load test: " + config);
+        System.out.println("Simulated clients: " + clients);
+
+        long start = System.currentTimeMillis();
+        long rampUpMs = TimeUnit.SECONDS.toMillis(config.getRampUpSeconds());
+        long deadline = start + rampUpMs + TimeUnit.SECONDS.toMillis(config.getDurationSeconds());
+        String runId = Long.toString(start, 36);
+
+        for (int r = 0; r < config.getRooms(); r++) {
+            // 房间依次启动，均匀分布在预热时间内
+            long roomStart = start + (config.getRooms() > 1 ? rampUpMs * r / (config.getRooms() - 1) : 0);
+            CompletableFuture<String> roomId = new CompletableFuture<>();
+            List<CompletableFuture<String>> players = new ArrayList<>(config.getPlayers());
+            for (int p = 0; p < config.getPlayers(); p++) {
+                players.add(new CompletableFuture<>());
+            }
+            for (int p = 0; p < config.getPlayers(); p++) {
+                String name = "load-" + runId + "-" + r + "-" + p;
+                executor.execute(new SimulatedPlayer(this, client, name, p, roomId, players, roomStart, deadline));
+            }
+        }
+        executor.shutdown();
+
+        long nextReport = start + REPORT_INTERVAL_MS;
+        while (!executor.awaitTermination(Math.max(1, Math.min(nextReport, deadline + 60_000) - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS)) {
+            long now = System.currentTimeMillis();
+            if (now >= deadline + 60_000) {
+                System.err.println("Players did not finish in time, stopping");
+                executor.shutdownNow();
+                break;
+            }
+            if (now >= nextReport) {
+                long total = stats.values().stream().mapToLong(EndpointStats::getCount).sum();
+                long errors = stats.values().stream().mapToLong(EndpointStats::getErrors).sum();
+                System.out.printf("[%3ds] requests=%d errors=%d%n", (now - start) / 1000, total, errors);
+                nextReport += REPORT_INTERVAL_MS;
+            }
+        }
+
+        report((System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    /**
+     * 运行在Java 21及以上时每个玩家使用一个虚拟线程，否则退回到普通线程
+     */
+    private static ExecutorService newPlayerExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            System.out.println("Using virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads not available (requires Java 21), using platform threads");
+            // 守护线程：超时后shutdownNow停不下来的玩家不会阻止进程在输出报告后退出
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "player");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void report(double elapsedSeconds) {
+        System.out.println();
+        System.out.printf("Elapsed: %.1fs%n", elapsedSeconds);
+        System.out.printf("%-12s %10s %10s %10s %10s %10s %8s %8s%n",
+                "endpoint", "requests", "req/s", "p50(ms)", "p99(ms)", "p999(ms)", "errors", "err%");
+        long totalRequests = 0;
+        long totalErrors = 0;
+        for (String endpoint : ENDPOINTS) {
+            EndpointStats endpointStats = stats.get(endpoint);
+            long count = endpointStats.getCount();
+            long errors = endpointStats.getErrors();
+            totalRequests += count;
+            totalErrors += errors;
+            System.out.printf("%-12s %10d %10.1f %10.2f %10.2f %10.2f %8d %7.2f%%%n",
+                    endpoint, count, count / elapsedSeconds,
+                    endpointStats.percentileMillis(0.5), endpointStats.percentileMillis(0.99),
+                    endpointStats.percentileMillis(0.999), errors, count == 0 ? 0 : 100.0 * errors / count);
+        }
+        System.out.printf("%-12s %10d %10.1f %10s %10s %10s %8d %7.2f%%%n",
+                "total", totalRequests, totalRequests / elapsedSeconds, "", "", "", totalErrors,
+                totalRequests == 0 ? 0 : 100.0 * totalErrors / totalRequests);
+    }
+}
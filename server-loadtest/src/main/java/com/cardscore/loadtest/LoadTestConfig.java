@@ -0,0 +1,111 @@
+package com.cardscore.loadtest;
+
+/**
+ * 压测参数，通过命令行 --名称=值 设置，例如：
+ * java -jar loadtest.jar --rooms=500 --players=4 --duration=120
+ */
+public class LoadTestConfig {
+    private String baseUrl = "http://localhost:8080";
+    private int rooms = 10;
+    private int players = 4;
+    private int durationSeconds = 60;
+    private int rampUpSeconds = 10;
+    private long thinkTimeMs = 5000;
+    private long pollIntervalMs = 3000;
+    private boolean useEtag = false;
+
+    public LoadTestConfig() {
+    }
+
+    /**
+     * 解析命令行参数，未设置的项使用默认值
+     */
+    public static LoadTestConfig fromArgs(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Invalid argument: " + arg + " (expected --name=value)");
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "url":
+                    config.baseUrl = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                    break;
+                case "rooms":
+                    config.rooms = Integer.parseInt(value);
+                    break;
+                case "players":
+                    config.players = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    config.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "ramp-up":
+                    config.rampUpSeconds = Integer.parseInt(value);
+                    break;
+                case "think-ms":
+                    config.thinkTimeMs = Long.parseLong(value);
+                    break;
+                case "poll-ms":
+                    config.pollIntervalMs = Long.parseLong(value);
+                    break;
+                case "etag":
+                    config.useEtag = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + name);
+            }
+        }
+        if (config.players < 2) {
+            throw new IllegalArgumentException("players must be at least 2");
+        }
+        return config;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getRooms() {
+        return rooms;
+    }
+
+    public int getPlayers() {
+        return players;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getRampUpSeconds() {
+        return rampUpSeconds;
+    }
+
+    public long getThinkTimeMs() {
+        return thinkTimeMs;
+    }
+
+    public long getPollIntervalMs() {
+        return pollIntervalMs;
+    }
+
+    public boolean isUseEtag() {
+        return useEtag;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadTestConfig{" +
+                "baseUrl='" + baseUrl + '\'' +
+                ", rooms=" + rooms +
+                ", players=" + players +
+                ", durationSeconds=" + durationSeconds +
+                ", rampUpSeconds=" + rampUpSeconds +
+                ", thinkTimeMs=" + thinkTimeMs +
+                ", pollIntervalMs=" + pollIntervalMs +
+                ", useEtag=" + useEtag +
+                '}';
+    }
+}
@@ -0,0 +1,200 @@
+package com.cardscore.loadtest;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 模拟一个玩家：登录，创建或加入房间，之后按思考时间记分，并按固定间隔轮询房间详情
+ */
+public class SimulatedPlayer implements Runnable {
+    private final LoadTest test;
+    private final HttpClient client;
+    private final String name;
+    private final boolean creator;
+    private final CompletableFuture<String> roomId;
+    private final List<CompletableFuture<String>> roomPlayers;
+    private final int seat;
+    private final long startAt;
+    private final long deadline;
+
+    private String userId;
+    private String etag;
+
+    public SimulatedPlayer(LoadTest test, HttpClient client, String name, int seat,
+                           CompletableFuture<String> roomId, List<CompletableFuture<String>> roomPlayers,
+                           long startAt, long deadline) {
+        this.test = test;
+        this.client = client;
+        this.name = name;
+        this.seat = seat;
+        this.creator = seat == 0;
+        this.roomId = roomId;
+        this.roomPlayers = roomPlayers;
+        this.startAt = startAt;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public void run() {
+        try {
+            sleepUntil(startAt);
+            userId = id(call("login", post("/api/users", "{\"name\":\"" + name + "\"}"), 201));
+            if (userId == null) {
+                return;
+            }
+
+            String room;
+            if (creator) {
+                room = id(call("createRoom", post("/api/rooms",
+                        "{\"name\":\"" + name + "的房间\",\"creatorId\":\"" + userId + "\"}"), 201));
+                if (room == null) {
+                    return;
+                }
+                roomId.complete(room);
+            } else {
+                // 等待房主创建房间，房主失败或到结束时间还没有创建时退出
+                try {
+                    room = roomId.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (ExecutionException | TimeoutException e) {
+                    return;
+                }
+                if (call("join", post("/api/rooms/" + room + "/join", "{\"userId\":\"" + userId + "\"}"), 200) == null) {
+                    return;
+                }
+            }
+            // 进入房间后才能成为其他玩家的收款人
+            roomPlayers.get(seat).complete(userId);
+
+            play(room);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // 响应格式错误等，玩家退出
+        } finally {
+            // 房主提前退出（登录失败、被中断等）时通知等待的其他玩家，房间已创建时不起作用
+            if (creator) {
+                roomId.completeExceptionally(new IllegalStateException("room not created"));
+            }
+        }
+    }
+
+    /**
+     * 主循环：到时间就轮询详情或记一笔分
+     */
+    private void play(String room) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis();
+        long nextPoll = now + random.nextLong(Math.max(1, test.getConfig().getPollIntervalMs()));
+        long nextScore = now + thinkTime(random);
+
+        while (true) {
+            now = System.currentTimeMillis();
+            if (now >= deadline) {
+                return;
+            }
+            if (now >= nextPoll) {
+                pollDetail(room);
+                nextPoll += test.getConfig().getPollIntervalMs();
+            }
+            if (now >= nextScore) {
+                score(room, random);
+                nextScore = now + thinkTime(random);
+            }
+            sleepUntil(Math.min(Math.min(nextPoll, nextScore), deadline));
+        }
+    }
+
+    private void pollDetail(String room) throws InterruptedException {
+        HttpRequest.Builder request = request("/api/rooms/" + room + "/detail").GET();
+        if (test.getConfig().isUseEtag() && etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        HttpResponse<String> response = send("detail", request.build(), 200);
+        if (response != null) {
+            response.headers().firstValue("ETag").ifPresent(value -> etag = value);
+        }
+    }
+
+    private void score(String room, ThreadLocalRandom random) throws InterruptedException {
+        int other = random.nextInt(roomPlayers.size() - 1);
+        if (other >= seat) {
+            other++;
+        }
+        String toUserId = roomPlayers.get(other).getNow(null);
+        if (toUserId == null) {
+            return;
+        }
+        call("transaction", post("/api/transactions", "{\"roomId\":\"" + room + "\",\"fromUserId\":\"" + userId
+                + "\",\"toUserId\":\"" + toUserId + "\",\"amount\":" + (1 + random.nextInt(50)) + "}"), 201);
+    }
+
+    /**
+     * 思考时间：在配置值的 0.5 ~ 1.5 倍之间随机
+     */
+    private long thinkTime(ThreadLocalRandom random) {
+        long think = test.getConfig().getThinkTimeMs();
+        return think / 2 + random.nextLong(Math.max(1, think));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(test.getConfig().getBaseUrl() + path))
+                .timeout(Duration.ofSeconds(30));
+    }
+
+    private HttpRequest post(String path, String body) {
+        return request(path)
+                .header("Content-Type", "application/json; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private String call(String endpoint, HttpRequest request, int expectedStatus) throws InterruptedException {
+        HttpResponse<String> response = send(endpoint, request, expectedStatus);
+        return response != null ? response.body() : null;
+    }
+
+    /**
+     * 发送请求并记录延迟，状态码不符（304除外）或网络错误记为失败并返回null
+     */
+    private HttpResponse<String> send(String endpoint, HttpRequest request, int expectedStatus)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            boolean ok = response.statusCode() == expectedStatus || response.statusCode() == 304;
+            test.record(endpoint, System.nanoTime() - start, !ok);
+            return ok ? response : null;
+        } catch (IOException e) {
+            test.record(endpoint, System.nanoTime() - start, true);
+            return null;
+        }
+    }
+
+    private static String id(String body) {
+        if (body == null) {
+            return null;
+        }
+        JsonObject json = JsonParser.parseString(body).getAsJsonObject();
+        return json.getAsJsonObject("data").get("id").getAsString();
+    }
+
+    private static void sleepUntil(long time) throws InterruptedException {
+        long delay = time - System.currentTimeMillis();
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package com.cardscore;
 
 import com.cardscore.controller.ApiController;
+import com.cardscore.controller.RoomEventStream;
+import com.cardscore.json.JsonCodec;
+import com.cardscore.logging.AccessLog;
+import com.cardscore.metrics.MetricsRegistry;
+import com.cardscore.server.ServerConfig;
+import com.cardscore.server.VirtualThreadPool;
 import com.cardscore.service.CardScoreService;
+import com.cardscore.service.MembershipReconciler;
+import com.cardscore.service.RoomEventBus;
 import com.cardscore.storage.LocalStorage;
+import com.cardscore.storage.StorageConfig;
+import com.google.gson.Gson;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+import java.lang.management.ManagementFactory;
 
 import static spark.Spark.*;
 
@@ -23,35 +37,92 @@ public class Application {
             }
         }
         port(port);
+        ServerConfig serverConfig = ServerConfig.fromSystemProperties();
+        String requestThreads = configureThreadPool(serverConfig);
 
         // 初始化组件
-        LocalStorage storage = new LocalStorage();
-        CardScoreService service = new CardScoreService(storage);
-        ApiController controller = new ApiController(service);
+        StorageConfig storageConfig = StorageConfig.fromSystemProperties();
+        LocalStorage storage = new LocalStorage(storageConfig);
+        Gson eventGson = JsonCodec.create();
+        RoomEventBus eventBus = new RoomEventBus(event -> RoomEventStream.encode(eventGson, event));
+        MembershipReconciler reconciler = new MembershipReconciler(
+                storage, eventBus, storageConfig.getReconcileIntervalMs());
+        CardScoreService service = new CardScoreService(storage, eventBus, reconciler);
+        AccessLog accessLog = new AccessLog();
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        ApiController controller = new ApiController(service, accessLog, metrics, serverConfig);
+
+        // 注册数据量指标（导出时计算）
+        metrics.gauge("cardscore_users", "Number of users", storage::getUserCount);
+        metrics.gauge("cardscore_rooms", "Number of rooms", storage::getRoomCount);
+        metrics.gauge("cardscore_transactions", "Number of transactions in all rooms", storage::getTransactionCount);
+        metrics.gauge("cardscore_largest_room_transactions", "Transactions in the largest room",
+                storage::getLargestRoomSize);
+        metrics.gauge("cardscore_room_cache_rooms", "Rooms held in memory", storage::getCachedRoomCount);
+        metrics.gauge("cardscore_room_cache_weight", "Total weight (transactions + rooms) of rooms held in memory",
+                storage::getCachedRoomWeight);
+        metrics.gauge("cardscore_accesslog_dropped", "Access log entries dropped because the queue was full",
+                accessLog::getDropped);
+
+        // 退出时写入未持久化的数据
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            reconciler.shutdown();
+            storage.close();
+            accessLog.shutdown();
+        }, "storage-shutdown"));
 
         // 设置路由
         controller.setupRoutes();
+        awaitInitialization();
+        long startupMs = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        metrics.gauge("cardscore_startup_seconds", "Time from JVM start until the server accepted requests",
+                () -> startupMs / 1000.0);
 
         // 启动成功日志
         System.out.println("==================================");
         System.out.println("Card Score Server Started");
         System.out.println("Port: " + port);
+        System.out.println("Request threads: " + requestThreads);
+        System.out.println("Startup time: " + startupMs + " ms (data recovery " + storage.getRecoveryMs() + " ms)");
         System.out.println("==================================");
         System.out.println("API Endpoints:");
         System.out.println("  POST   /api/users                    - Create user");
-        System.out.println("  GET    /api/users                    - Get all users");
+        System.out.println("  GET    /api/users?limit=&after=      - Get all users (paged with limit/after)");
         System.out.println("  GET    /api/users/:id                - Get user by ID");
         System.out.println("  POST   /api/rooms                    - Create room");
-        System.out.println("  GET    /api/rooms                    - Get all rooms");
-        System.out.println("  GET    /api/rooms/search?keyword=... - Search rooms");
+        System.out.println("  GET    /api/rooms?limit=&after=      - Get all rooms (paged with limit/after)");
+        System.out.println("  GET    /api/rooms/search?keyword=...&limit=&sort=recent|members - Search rooms");
         System.out.println("  GET    /api/rooms/:id                - Get room by ID");
         System.out.println("  POST   /api/rooms/:id/join           - Join room");
         System.out.println("  POST   /api/rooms/:id/leave          - Leave room");
-        System.out.println("  GET    /api/rooms/:id/detail         - Get room detail");
+        System.out.println("  GET    /api/rooms/:id/detail         - Get room detail (?since=&offset= for delta sync)");
+        System.out.println("  GET    /api/rooms/:id/stream         - Subscribe room events (SSE)");
         System.out.println("  POST   /api/transactions             - Create transaction");
-        System.out.println("  GET    /api/transactions/room/:roomId - Get room transactions");
+        System.out.println("  POST   /api/transactions/batch       - Create transactions of one room atomically");
+        System.out.println("  GET    /api/transactions/room/:roomId?limit=&after= - Get room transactions");
         System.out.println("  GET    /api/transactions/room/:roomId/details - Get transaction details");
         System.out.println("  GET    /health                       - Health check");
+        System.out.println("  GET    /metrics                      - Prometheus metrics");
         System.out.println("==================================");
     }
+
+    /**
+     * 配置处理请求的线程：优先使用虚拟线程（需要Java 21），否则按配置设置Jetty线程池大小
+     */
+    private static String configureThreadPool(ServerConfig config) {
+        if (config.isVirtualThreads()) {
+            VirtualThreadPool pool = VirtualThreadPool.createIfSupported("http-vt-");
+            if (pool != null) {
+                EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory().withThreadPool(pool));
+                return "virtual";
+            }
+            System.err.println("Virtual threads require Java 21 or later, using the platform thread pool");
+        }
+        if (config.getMaxThreads() > 0) {
+            threadPool(config.getMaxThreads(), config.getMinThreads(), config.getIdleTimeoutMs());
+            return "pool(max=" + config.getMaxThreads() + ", min=" + config.getMinThreads()
+                    + ", idleTimeoutMs=" + config.getIdleTimeoutMs() + ")";
+        }
+        return "default pool";
+    }
 }
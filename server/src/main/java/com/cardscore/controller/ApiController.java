@@ -1,15 +1,23 @@
 package com.cardscore.controller;
 
+import com.cardscore.json.JsonCodec;
+import com.cardscore.logging.AccessLog;
+import com.cardscore.metrics.MetricsRegistry;
 import com.cardscore.model.*;
+import com.cardscore.server.ServerConfig;
 import com.cardscore.service.CardScoreService;
 import com.google.gson.Gson;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
+import spark.Route;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequestWrapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,32 +28,175 @@ import static spark.Spark.*;
  * REST API控制器
  */
 public class ApiController {
-    private static final Logger logger = LoggerFactory.getLogger(ApiController.class);
-    private static final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
-    
+    private static final String ATTR_START = "cardscore.start";
+    private static final String ATTR_ROUTE = "cardscore.route";
+    private static final String ATTR_RESPONSE_BODY = "cardscore.responseBody";
+
     private final CardScoreService service;
+    private final AccessLog accessLog;
+    private final MetricsRegistry metrics;
+    private final ServerConfig config;
     private final Gson gson;
 
-    public ApiController(CardScoreService service) {
+    public ApiController(CardScoreService service, AccessLog accessLog, MetricsRegistry metrics) {
+        this(service, accessLog, metrics, new ServerConfig());
+    }
+
+    public ApiController(CardScoreService service, AccessLog accessLog, MetricsRegistry metrics, ServerConfig config) {
         this.service = service;
-        this.gson = new Gson();
+        this.accessLog = accessLog;
+        this.metrics = metrics;
+        this.config = config;
+        this.gson = JsonCodec.create();
     }
     
     /**
-     * 记录API请求
+     * 包装路由处理器，记录匹配的路由模板供访问日志按路由采样和聚合
      */
-    private void logRequest(String method, String path, String body) {
-        String timestamp = LocalDateTime.now().format(timeFormatter);
-        logger.info("[{}] {} {} | Body: {}", timestamp, method, path, body != null ? body : "null");
+    private Route traced(Route handler) {
+        return (req, res) -> {
+            req.attribute(ATTR_ROUTE, req.matchedPath());
+            Object body = handler.handle(req, res);
+            if (accessLog.isBodyLoggingEnabled()) {
+                req.attribute(ATTR_RESPONSE_BODY, body);
+            }
+            return body;
+        };
     }
-    
+
+    /**
+     * 请求结束后记录指标，并放入访问日志队列（格式化和输出在日志线程完成）
+     */
+    private void logAccess(Request req, Response res) {
+        Long start = req.attribute(ATTR_START);
+        if (start == null) {
+            return;
+        }
+        long duration = System.nanoTime() - start;
+        String route = req.attribute(ATTR_ROUTE);
+        int status = res.status();
+        recordMetrics(req.requestMethod(), route != null ? route : "unmatched", status, duration);
+        if (!accessLog.sample(route, status)) {
+            return;
+        }
+
+        String path = req.queryString() == null ? req.pathInfo() : req.pathInfo() + "?" + req.queryString();
+        String requestBody = null;
+        String responseBody = null;
+        if (accessLog.isBodyLoggingEnabled()) {
+            requestBody = req.body();
+            Object body = req.attribute(ATTR_RESPONSE_BODY);
+            responseBody = body != null ? body.toString() : res.body();
+        }
+        accessLog.log(new AccessLog.Entry(System.currentTimeMillis(), req.requestMethod(), path,
+                route, status, duration, requestBody, responseBody));
+    }
+
+    /**
+     * 请求体输入流。Spark的请求包装在getInputStream()时会把整个请求体读入内存（供req.body()重复读取），
+     * 只有访问日志记录请求体时才需要，其他情况绕过包装直接读取Jetty的输入流
+     */
+    private InputStream requestBody(Request req) throws IOException {
+        HttpServletRequest raw = req.raw();
+        if (!accessLog.isBodyLoggingEnabled() && raw instanceof ServletRequestWrapper) {
+            return ((ServletRequestWrapper) raw).getRequest().getInputStream();
+        }
+        return raw.getInputStream();
+    }
+
+    private void recordMetrics(String method, String route, int status, long durationNanos) {
+        metrics.histogram("cardscore_http_request_duration_seconds", "HTTP request latency by route",
+                1e9, "method", method, "route", route).record(durationNanos);
+        if (status >= 400) {
+            metrics.counter("cardscore_http_errors_total", "HTTP responses with status >= 400",
+                    "method", method, "route", route, "status", String.valueOf(status)).increment();
+        }
+    }
+
+    /**
+     * 序列化响应
+     */
+    private String toJson(Object value) {
+        return JsonCodec.toJson(gson, value);
+    }
+
+    /**
+     * 请求是否带有分页参数（不带时返回完整列表，兼容旧客户端）
+     */
+    private static boolean isPaged(Request req) {
+        return req.queryParams("limit") != null || req.queryParams("after") != null;
+    }
+
+    /**
+     * 请求是否带有增量同步参数since或offset（不带时返回完整数据）
+     */
+    private static boolean isDelta(Request req) {
+        return req.queryParams("since") != null || req.queryParams("offset") != null;
+    }
+
     /**
-     * 记录API响应
+     * 解析增量同步参数，缺省时返回null，格式错误时抛出异常
      */
-    private void logResponse(String method, String path, int statusCode, String response) {
-        String timestamp = LocalDateTime.now().format(timeFormatter);
-        logger.info("[{}] {} {} | Status: {} | Response: {}", timestamp, method, path, statusCode, 
-                    response.length() > 500 ? response.substring(0, 500) + "..." : response);
+    private static Long parseSyncParam(String value) throws Exception {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new Exception("无效的同步位置");
+        }
+    }
+
+    private static Integer parseOffset(Request req) throws Exception {
+        Long offset = parseSyncParam(req.queryParams("offset"));
+        if (offset == null) {
+            return null;
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new Exception("无效的同步位置");
+        }
+        return offset.intValue();
+    }
+
+    /**
+     * 解析整数查询参数，缺省或格式错误时返回默认值
+     */
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 设置房间版本ETag，如果与If-None-Match匹配则返回304（不序列化、不计算分数）
+     */
+    private boolean notModified(Request req, Response res, String roomId) {
+        long version = service.getRoomVersion(roomId);
+        if (version < 0) {
+            return false;
+        }
+
+        String etag = "W/\"" + version + "\"";
+        res.header("ETag", etag);
+
+        String ifNoneMatch = req.headers("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || ("W/" + tag).equals(etag)) {
+                res.status(304);
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -54,9 +205,11 @@ public class ApiController {
     public void setupRoutes() {
         // CORS配置
         before((request, response) -> {
+            request.attribute(ATTR_START, System.nanoTime());
             response.header("Access-Control-Allow-Origin", "*");
             response.header("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-            response.header("Access-Control-Allow-Headers", "Content-Type, Authorization");
+            response.header("Access-Control-Allow-Headers", "Content-Type, Authorization, If-None-Match");
+            response.header("Access-Control-Expose-Headers", "ETag");
         });
 
         options("/*", (request, response) -> {
@@ -64,255 +217,320 @@ public class ApiController {
             return "OK";
         });
 
-        // 设置响应类型
+        // 拒绝声明长度超过上限的请求体，不读取内容
+        before((request, response) -> {
+            if (request.raw().getContentLengthLong() > JsonCodec.MAX_REQUEST_BYTES) {
+                response.type("application/json; charset=utf-8");
+                halt(413, toJson(ApiResponse.error("请求体过大")));
+            }
+        });
+
+        // 设置响应类型（路由已指定的除外）
         after((request, response) -> {
-            response.type("application/json; charset=utf-8");
+            if (response.type() == null) {
+                response.type("application/json; charset=utf-8");
+            }
         });
 
+        // 访问日志（异常处理之后也会执行）
+        afterAfter(this::logAccess);
+
         // User API
         path("/api/users", () -> {
-            post("", this::createUser);
-            get("", this::getAllUsers);
-            get("/:id", this::getUser);
+            post("", traced(this::createUser));
+            get("", traced(this::getAllUsers));
+            get("/:id", traced(this::getUser));
         });
 
         // Room API
         path("/api/rooms", () -> {
-            post("", this::createRoom);
-            get("", this::getAllRooms);
-            get("/search", this::searchRooms);
-            get("/:id", this::getRoom);
-            post("/:id/join", this::joinRoom);
-            post("/:id/leave", this::leaveRoom);
-            get("/:id/detail", this::getRoomDetail);
+            post("", traced(this::createRoom));
+            get("", traced(this::getAllRooms));
+            get("/search", traced(this::searchRooms));
+            get("/:id", traced(this::getRoom));
+            post("/:id/join", traced(this::joinRoom));
+            post("/:id/leave", traced(this::leaveRoom));
+            get("/:id/detail", traced(this::getRoomDetail));
+            get("/:id/stream", traced(this::streamRoom));
         });
 
         // Transaction API
         path("/api/transactions", () -> {
-            post("", this::createTransaction);
-            get("/room/:roomId", this::getRoomTransactions);
-            get("/room/:roomId/details", this::getTransactionDetails);
+            post("", traced(this::createTransaction));
+            post("/batch", traced(this::createTransactionBatch));
+            get("/room/:roomId", traced(this::getRoomTransactions));
+            get("/room/:roomId/details", traced(this::getTransactionDetails));
         });
 
         // Health check
-        get("/health", (req, res) -> {
-            return gson.toJson(Map.of("status", "OK", "timestamp", System.currentTimeMillis()));
-        });
+        get("/health", traced((req, res) -> {
+            return toJson(Map.of("status", "OK", "timestamp", System.currentTimeMillis()));
+        }));
+
+        // Metrics
+        get("/metrics", traced((req, res) -> {
+            res.type("text/plain; version=0.0.4; charset=utf-8");
+            return metrics.scrape();
+        }));
 
         // Exception handling
         exception(Exception.class, (exception, request, response) -> {
             response.status(500);
-            response.body(gson.toJson(ApiResponse.error(exception.getMessage())));
+            response.body(toJson(ApiResponse.error(exception.getMessage())));
         });
     }
 
     // ============= User Controllers =============
 
     private String createUser(Request req, Response res) {
-        logRequest("POST", "/api/users", req.body());
         try {
-            Map<String, String> body = gson.fromJson(req.body(), Map.class);
-            String name = body.get("name");
-            
-            User user = service.createUser(name);
+            CreateUserRequest body = JsonCodec.read(gson, requestBody(req), CreateUserRequest.class);
+            User user = service.createUser(body.getName());
             res.status(201);
-            String response = gson.toJson(ApiResponse.success(user));
-            logResponse("POST", "/api/users", 201, response);
-            return response;
+            return toJson(ApiResponse.success(user));
         } catch (Exception e) {
             res.status(400);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("POST", "/api/users", 400, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 
     private String getAllUsers(Request req, Response res) {
-        logRequest("GET", "/api/users", null);
+        if (isPaged(req)) {
+            try {
+                Page<User> page = service.getUsersPage(req.queryParams("after"), parseInt(req.queryParams("limit"), 0));
+                return toJson(ApiResponse.success(page));
+            } catch (Exception e) {
+                res.status(400);
+                return toJson(ApiResponse.error(e.getMessage()));
+            }
+        }
         List<User> users = service.getAllUsers();
-        String response = gson.toJson(ApiResponse.success(users));
-        logResponse("GET", "/api/users", 200, response);
-        return response;
+        return toJson(ApiResponse.success(users));
     }
 
     private String getUser(Request req, Response res) {
         String userId = req.params(":id");
-        logRequest("GET", "/api/users/" + userId, null);
         try {
             User user = service.getUser(userId);
-            String response = gson.toJson(ApiResponse.success(user));
-            logResponse("GET", "/api/users/" + userId, 200, response);
-            return response;
+            return toJson(ApiResponse.success(user));
         } catch (Exception e) {
             res.status(404);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("GET", "/api/users/" + userId, 404, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 
     // ============= Room Controllers =============
 
     private String createRoom(Request req, Response res) {
-        logRequest("POST", "/api/rooms", req.body());
         try {
-            Map<String, String> body = gson.fromJson(req.body(), Map.class);
-            String name = body.get("name");
-            String creatorId = body.get("creatorId");
-            
-            Room room = service.createRoom(name, creatorId);
+            CreateRoomRequest body = JsonCodec.read(gson, requestBody(req), CreateRoomRequest.class);
+            Room room = service.createRoom(body.getName(), body.getCreatorId());
             res.status(201);
-            String response = gson.toJson(ApiResponse.success(room));
-            logResponse("POST", "/api/rooms", 201, response);
-            return response;
+            return toJson(ApiResponse.success(room));
         } catch (Exception e) {
             res.status(400);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("POST", "/api/rooms", 400, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 
     private String getAllRooms(Request req, Response res) {
-        logRequest("GET", "/api/rooms", null);
-        List<Room> rooms = service.getAllRooms();
-        String response = gson.toJson(ApiResponse.success(rooms));
-        logResponse("GET", "/api/rooms", 200, response);
-        return response;
+        if (isPaged(req)) {
+            try {
+                Page<RoomSummary> page = service.getRoomsPage(req.queryParams("after"), parseInt(req.queryParams("limit"), 0));
+                return toJson(ApiResponse.success(page));
+            } catch (Exception e) {
+                res.status(400);
+                return toJson(ApiResponse.error(e.getMessage()));
+            }
+        }
+        List<RoomSummary> rooms = service.getAllRooms();
+        return toJson(ApiResponse.success(rooms));
     }
 
     private String searchRooms(Request req, Response res) {
         String keyword = req.queryParams("keyword");
-        logRequest("GET", "/api/rooms/search?keyword=" + keyword, null);
-        List<Room> rooms = service.searchRooms(keyword);
-        String response = gson.toJson(ApiResponse.success(rooms));
-        logResponse("GET", "/api/rooms/search?keyword=" + keyword, 200, response);
-        return response;
+        try {
+            Page<RoomSummary> page = service.searchRooms(keyword, req.queryParams("after"),
+                    parseInt(req.queryParams("limit"), 0), req.queryParams("sort"));
+            // 不带分页参数时只返回第一页的列表（兼容旧客户端）
+            return toJson(ApiResponse.success(isPaged(req) ? page : page.getItems()));
+        } catch (Exception e) {
+            res.status(400);
+            return toJson(ApiResponse.error(e.getMessage()));
+        }
     }
 
     private String getRoom(Request req, Response res) {
         String roomId = req.params(":id");
-        logRequest("GET", "/api/rooms/" + roomId, null);
+        if (notModified(req, res, roomId)) {
+            return "";
+        }
         try {
             Room room = service.getRoom(roomId);
-            String response = gson.toJson(ApiResponse.success(room));
-            logResponse("GET", "/api/rooms/" + roomId, 200, response);
-            return response;
+            return toJson(ApiResponse.success(room));
         } catch (Exception e) {
             res.status(404);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("GET", "/api/rooms/" + roomId, 404, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 
     private String joinRoom(Request req, Response res) {
         String roomId = req.params(":id");
-        logRequest("POST", "/api/rooms/" + roomId + "/join", req.body());
         try {
-            Map<String, String> body = gson.fromJson(req.body(), Map.class);
-            String userId = body.get("userId");
-            
-            Room room = service.joinRoom(roomId, userId);
-            String response = gson.toJson(ApiResponse.success(room));
-            logResponse("POST", "/api/rooms/" + roomId + "/join", 200, response);
-            return response;
+            RoomMemberRequest body = JsonCodec.read(gson, requestBody(req), RoomMemberRequest.class);
+            Room room = service.joinRoom(roomId, body.getUserId());
+            return toJson(ApiResponse.success(room));
         } catch (Exception e) {
             res.status(400);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("POST", "/api/rooms/" + roomId + "/join", 400, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 
     private String leaveRoom(Request req, Response res) {
         String roomId = req.params(":id");
-        logRequest("POST", "/api/rooms/" + roomId + "/leave", req.body());
         try {
-            Map<String, String> body = gson.fromJson(req.body(), Map.class);
-            String userId = body.get("userId");
-            
-            service.leaveRoom(roomId, userId);
-            String response = gson.toJson(ApiResponse.success(Map.of("message", "已退出房间")));
-            logResponse("POST", "/api/rooms/" + roomId + "/leave", 200, response);
-            return response;
+            RoomMemberRequest body = JsonCodec.read(gson, requestBody(req), RoomMemberRequest.class);
+            service.leaveRoom(roomId, body.getUserId());
+            return toJson(ApiResponse.success(Map.of("message", "已退出房间")));
         } catch (Exception e) {
             res.status(400);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("POST", "/api/rooms/" + roomId + "/leave", 400, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 
     private String getRoomDetail(Request req, Response res) {
         String roomId = req.params(":id");
-        logRequest("GET", "/api/rooms/" + roomId + "/detail", null);
+        if (notModified(req, res, roomId)) {
+            return "";
+        }
+        if (isDelta(req)) {
+            try {
+                RoomDelta<Transaction> delta = service.getRoomDetailSince(
+                        roomId, parseSyncParam(req.queryParams("since")), parseOffset(req));
+                return toJson(ApiResponse.success(delta));
+            } catch (Exception e) {
+                res.status(service.getRoomVersion(roomId) < 0 ? 404 : 400);
+                return toJson(ApiResponse.error(e.getMessage()));
+            }
+        }
         try {
-            Map<String, Object> detail = service.getRoomDetail(roomId);
-            String response = gson.toJson(ApiResponse.success(detail));
-            logResponse("GET", "/api/rooms/" + roomId + "/detail", 200, response);
-            return response;
+            RoomDetail detail = service.getRoomDetail(roomId);
+            return toJson(ApiResponse.success(detail));
         } catch (Exception e) {
             res.status(404);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("GET", "/api/rooms/" + roomId + "/detail", 404, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    private String streamRoom(Request req, Response res) {
+        String roomId = req.params(":id");
+        long version = service.getRoomVersion(roomId);
+        if (version < 0) {
+            res.status(404);
+            return toJson(ApiResponse.error("房间不存在"));
+        }
+
+        HttpServletResponse raw = res.raw();
+        raw.setStatus(200);
+        raw.setContentType("text/event-stream; charset=utf-8");
+        raw.setHeader("Cache-Control", "no-cache");
+        raw.setHeader("X-Accel-Buffering", "no");
+
+        // 异步保持连接，响应提交后Spark不会再写入或关闭输出流
+        AsyncContext context = req.raw().startAsync();
+        RoomEventStream stream = new RoomEventStream(context, gson, config.getEventQueueSize(),
+                config.getEventTimeoutMs(), s -> service.unsubscribeRoom(roomId, s));
+        // 先发送版本号事件再订阅，之后的事件排在它后面
+        if (!stream.open(roomId, version)) {
+            stream.close();
+            return "";
+        }
+        try {
+            service.subscribeRoom(roomId, stream);
+        } catch (Exception e) {
+            stream.close();
         }
+        return "";
     }
 
     // ============= Transaction Controllers =============
 
     private String createTransaction(Request req, Response res) {
-        logRequest("POST", "/api/transactions", req.body());
         try {
-            Map<String, Object> body = gson.fromJson(req.body(), Map.class);
-            String roomId = (String) body.get("roomId");
-            String fromUserId = (String) body.get("fromUserId");
-            String toUserId = (String) body.get("toUserId");
-            int amount = ((Double) body.get("amount")).intValue();
-            
-            Transaction transaction = service.createTransaction(roomId, fromUserId, toUserId, amount);
+            CreateTransactionRequest body = JsonCodec.read(gson, requestBody(req), CreateTransactionRequest.class);
+            Transaction transaction = service.createTransaction(
+                    body.getRoomId(), body.getFromUserId(), body.getToUserId(), body.getAmount());
             res.status(201);
-            String response = gson.toJson(ApiResponse.success(transaction));
-            logResponse("POST", "/api/transactions", 201, response);
-            return response;
+            return toJson(ApiResponse.success(transaction));
         } catch (Exception e) {
             res.status(400);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("POST", "/api/transactions", 400, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    private String createTransactionBatch(Request req, Response res) {
+        try {
+            CreateTransactionBatchRequest body = JsonCodec.read(gson, requestBody(req),
+                    CreateTransactionBatchRequest.class);
+            List<Transaction> transactions = service.createTransactions(body.getRoomId(), body.getTransactions());
+            res.status(201);
+            return toJson(ApiResponse.success(transactions));
+        } catch (Exception e) {
+            res.status(400);
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 
     private String getRoomTransactions(Request req, Response res) {
         String roomId = req.params(":roomId");
-        logRequest("GET", "/api/transactions/room/" + roomId, null);
+        if (notModified(req, res, roomId)) {
+            return "";
+        }
+        if (isDelta(req)) {
+            try {
+                RoomDelta<Transaction> delta = service.getRoomTransactionsSince(
+                        roomId, parseSyncParam(req.queryParams("since")), parseOffset(req));
+                return toJson(ApiResponse.success(delta));
+            } catch (Exception e) {
+                res.status(service.getRoomVersion(roomId) < 0 ? 404 : 400);
+                return toJson(ApiResponse.error(e.getMessage()));
+            }
+        }
         try {
+            if (isPaged(req)) {
+                Page<Transaction> page = service.getRoomTransactionsPage(
+                        roomId, req.queryParams("after"), parseInt(req.queryParams("limit"), 0));
+                return toJson(ApiResponse.success(page));
+            }
             List<Transaction> transactions = service.getRoomTransactions(roomId);
-            String response = gson.toJson(ApiResponse.success(transactions));
-            logResponse("GET", "/api/transactions/room/" + roomId, 200, response);
-            return response;
+            return toJson(ApiResponse.success(transactions));
         } catch (Exception e) {
             res.status(404);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("GET", "/api/transactions/room/" + roomId, 404, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 
     private String getTransactionDetails(Request req, Response res) {
         String roomId = req.params(":roomId");
-        logRequest("GET", "/api/transactions/room/" + roomId + "/details", null);
+        if (notModified(req, res, roomId)) {
+            return "";
+        }
+        if (isDelta(req)) {
+            try {
+                RoomDelta<TransactionDetail> delta = service.getTransactionDetailsSince(
+                        roomId, parseSyncParam(req.queryParams("since")), parseOffset(req));
+                return toJson(ApiResponse.success(delta));
+            } catch (Exception e) {
+                res.status(service.getRoomVersion(roomId) < 0 ? 404 : 400);
+                return toJson(ApiResponse.error(e.getMessage()));
+            }
+        }
         try {
-            List<Map<String, Object>> details = service.getTransactionDetails(roomId);
-            String response = gson.toJson(ApiResponse.success(details));
-            logResponse("GET", "/api/transactions/room/" + roomId + "/details", 200, response);
-            return response;
+            List<TransactionDetail> details = service.getTransactionDetails(roomId);
+            return toJson(ApiResponse.success(details));
         } catch (Exception e) {
             res.status(404);
-            String response = gson.toJson(ApiResponse.error(e.getMessage()));
-            logResponse("GET", "/api/transactions/room/" + roomId + "/details", 404, response);
-            return response;
+            return toJson(ApiResponse.error(e.getMessage()));
         }
     }
 }
@@ -0,0 +1,168 @@
+package com.cardscore.controller;
+
+import com.cardscore.json.JsonCodec;
+import com.cardscore.metrics.MetricsRegistry;
+import com.cardscore.model.RoomEvent;
+import com.cardscore.service.RoomEventBus;
+import com.google.gson.Gson;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 基于Server-Sent Events的房间事件推送连接
+ * 每个连接有自己的有界发送队列，使用非阻塞输出（WriteListener）写出：推送只放入队列，
+ * 连接可写时由发布线程或容器回调继续写出。客户端读取太慢导致队列满时断开连接，
+ * 客户端重连后按版本号增量同步
+ */
+public class RoomEventStream implements RoomEventBus.Subscriber {
+    private static final LongAdder overflows = MetricsRegistry.getDefault().counter(
+            "cardscore_room_event_overflows_total", "Event streams closed because the client could not keep up");
+
+    private static final byte[] PING = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final AsyncContext context;
+    private final Gson gson;
+    private final int maxQueued;
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();  // 待写出的消息（可能与其他连接共用），加锁访问
+    private ServletOutputStream out;  // open之后才可写
+    private boolean unflushed;        // 已写入输出流但还没有flush
+    private volatile boolean closed;
+
+    /**
+     * @param maxQueued 最多排队的消息数，超过时断开连接
+     * @param timeoutMs 连接的最长保持时间，到期后断开，客户端重连；小于等于0表示不限制
+     */
+    public RoomEventStream(AsyncContext context, Gson gson, int maxQueued, long timeoutMs,
+                           Consumer<RoomEventStream> onClose) {
+        this.context = context;
+        this.gson = gson;
+        this.maxQueued = maxQueued;
+        context.setTimeout(Math.max(0, timeoutMs));
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                closed = true;
+                onClose.accept(RoomEventStream.this);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                close();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                close();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    /**
+     * 切换为非阻塞输出并发送初始事件，告知客户端当前版本号
+     */
+    public boolean open(String roomId, long version) {
+        synchronized (this) {
+            try {
+                out = context.getResponse().getOutputStream();
+                out.setWriteListener(new WriteListener() {
+                    @Override
+                    public void onWritePossible() {
+                        drain();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        close();
+                    }
+                });
+            } catch (IOException | IllegalStateException e) {
+                return false;
+            }
+        }
+        return enqueue(encode(gson, new RoomEvent("version", roomId, version)));
+    }
+
+    /**
+     * 编码为SSE消息，事件总线对每个事件只调用一次，所有连接共用结果
+     */
+    public static byte[] encode(Gson gson, RoomEvent event) {
+        return ("event: " + event.getType() + "\ndata: " + JsonCodec.toJson(gson, event) + "\n\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean onEvent(byte[] frame) {
+        return enqueue(frame);
+    }
+
+    @Override
+    public boolean onHeartbeat() {
+        return enqueue(PING);
+    }
+
+    private synchronized boolean enqueue(byte[] message) {
+        if (closed) {
+            return false;
+        }
+        if (queue.size() >= maxQueued) {
+            overflows.increment();
+            close();
+            return false;
+        }
+        queue.addLast(message);
+        drain();
+        return !closed;
+    }
+
+    /**
+     * 连接可写时写出排队的消息，最后flush；不可写时返回，可写后容器回调onWritePossible继续
+     */
+    private synchronized void drain() {
+        if (closed || out == null) {
+            return;
+        }
+        try {
+            while (out.isReady()) {
+                byte[] message = queue.pollFirst();
+                if (message != null) {
+                    out.write(message);
+                    unflushed = true;
+                } else if (unflushed) {
+                    unflushed = false;
+                    out.flush();
+                } else {
+                    return;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();
+        try {
+            context.complete();
+        } catch (IllegalStateException e) {
+            // 连接已结束
+        }
+    }
+}
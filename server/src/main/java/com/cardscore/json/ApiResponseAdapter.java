@@ -0,0 +1,67 @@
+package com.cardscore.json;
+
+import com.cardscore.model.ApiResponse;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * ApiResponse的流式JSON写入，data按运行时类型交给对应的TypeAdapter
+ */
+public class ApiResponseAdapter extends TypeAdapter<ApiResponse<?>> {
+    private final Gson gson;
+
+    public ApiResponseAdapter(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void write(JsonWriter out, ApiResponse<?> response) throws IOException {
+        if (response == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("success").value(response.isSuccess());
+        out.name("message").value(response.getMessage());
+        Object data = response.getData();
+        if (data != null) {
+            out.name("data");
+            TypeAdapter adapter = gson.getAdapter(data.getClass());
+            adapter.write(out, data);
+        }
+        out.endObject();
+    }
+
+    @Override
+    public ApiResponse<?> read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        ApiResponse<Object> response = new ApiResponse<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "success":
+                    response.setSuccess(in.nextBoolean());
+                    break;
+                case "message":
+                    response.setMessage(JsonCodec.nextString(in));
+                    break;
+                case "data":
+                    response.setData(gson.getAdapter(Object.class).read(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return response;
+    }
+}
@@ -0,0 +1,150 @@
+package com.cardscore.json;
+
+import com.cardscore.model.*;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON编解码入口：注册所有手写的TypeAdapter，API和存储共用
+ */
+public final class JsonCodec {
+    /**
+     * 请求体的最大字节数（最大的批量转账请求约15KB）
+     */
+    public static final int MAX_REQUEST_BYTES = 1 << 20;
+
+    private JsonCodec() {
+    }
+
+    /**
+     * 创建注册了所有类型适配器的GsonBuilder
+     */
+    public static GsonBuilder builder() {
+        TransactionAdapter transactionAdapter = new TransactionAdapter();
+        UserAdapter userAdapter = new UserAdapter();
+        RoomAdapter roomAdapter = new RoomAdapter(transactionAdapter);
+        return new GsonBuilder()
+                .disableHtmlEscaping()
+                .registerTypeAdapter(Transaction.class, transactionAdapter)
+                .registerTypeAdapter(User.class, userAdapter)
+                .registerTypeAdapter(Room.class, roomAdapter)
+                .registerTypeAdapter(RoomSummary.class, new RoomSummaryAdapter())
+                .registerTypeAdapter(RoomDetail.class, new RoomDetailAdapter(roomAdapter, userAdapter))
+                .registerTypeAdapter(TransactionDetail.class, new TransactionDetailAdapter(transactionAdapter))
+                .registerTypeAdapter(CreateUserRequest.class, new RequestAdapters.CreateUser())
+                .registerTypeAdapter(CreateRoomRequest.class, new RequestAdapters.CreateRoom())
+                .registerTypeAdapter(RoomMemberRequest.class, new RequestAdapters.RoomMember())
+                .registerTypeAdapter(CreateTransactionRequest.class, new RequestAdapters.CreateTransaction())
+                .registerTypeAdapter(CreateTransactionBatchRequest.class, new RequestAdapters.CreateTransactionBatch())
+                .registerTypeAdapterFactory(new TypeAdapterFactory() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+                        if (!ApiResponse.class.isAssignableFrom(type.getRawType())) {
+                            return null;
+                        }
+                        return (TypeAdapter<T>) new ApiResponseAdapter(gson);
+                    }
+                });
+    }
+
+    public static Gson create() {
+        return builder().create();
+    }
+
+    /**
+     * 序列化为字符串，写入不加锁的StringBuilder而不是StringWriter
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static String toJson(Gson gson, Object value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilderWriter writer = new StringBuilderWriter(256);
+        try {
+            TypeAdapter adapter = gson.getAdapter(value.getClass());
+            adapter.write(gson.newJsonWriter(writer), value);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * 从输入流边读边解析（按UTF-8解码），这里不缓存请求体；传入的流是否已缓存由调用方决定
+     * 读取超过MAX_REQUEST_BYTES时停止读取（用于没有Content-Length的分块请求），
+     * 请求体为空、格式错误或过大时抛出异常
+     */
+    public static <T> T read(Gson gson, InputStream in, Class<T> type) throws Exception {
+        LimitedInputStream limited = new LimitedInputStream(in, MAX_REQUEST_BYTES);
+        try {
+            JsonReader reader = gson.newJsonReader(new InputStreamReader(limited, StandardCharsets.UTF_8));
+            return gson.getAdapter(type).read(reader);
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            if (limited.exceeded) {
+                throw new Exception("请求体过大");
+            }
+            throw new Exception("请求格式错误");
+        }
+    }
+
+    /**
+     * 读取超过限制的字节数时抛出IOException
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+        private boolean exceeded;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                // 恰好读完限制时，再读到结束符说明请求体没有超出
+                if (in.read() < 0) {
+                    return -1;
+                }
+                exceeded = true;
+                throw new IOException("Request body exceeds " + MAX_REQUEST_BYTES + " bytes");
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 读取字符串字段，允许null
+     */
+    static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
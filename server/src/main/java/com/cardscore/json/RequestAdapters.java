@@ -0,0 +1,178 @@
+package com.cardscore.json;
+
+import com.cardscore.model.CreateRoomRequest;
+import com.cardscore.model.CreateTransactionBatchRequest;
+import com.cardscore.model.CreateTransactionRequest;
+import com.cardscore.model.CreateUserRequest;
+import com.cardscore.model.RoomMemberRequest;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * 请求体的流式JSON读取（不使用反射，数值字段直接按int读取）
+ */
+public final class RequestAdapters {
+
+    private RequestAdapters() {
+    }
+
+    public static class CreateUser extends TypeAdapter<CreateUserRequest> {
+        @Override
+        public void write(JsonWriter out, CreateUserRequest request) throws IOException {
+            out.beginObject();
+            out.name("name").value(request.getName());
+            out.endObject();
+        }
+
+        @Override
+        public CreateUserRequest read(JsonReader in) throws IOException {
+            CreateUserRequest request = new CreateUserRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("name".equals(in.nextName())) {
+                    request.setName(JsonCodec.nextString(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+    }
+
+    public static class CreateRoom extends TypeAdapter<CreateRoomRequest> {
+        @Override
+        public void write(JsonWriter out, CreateRoomRequest request) throws IOException {
+            out.beginObject();
+            out.name("name").value(request.getName());
+            out.name("creatorId").value(request.getCreatorId());
+            out.endObject();
+        }
+
+        @Override
+        public CreateRoomRequest read(JsonReader in) throws IOException {
+            CreateRoomRequest request = new CreateRoomRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name":
+                        request.setName(JsonCodec.nextString(in));
+                        break;
+                    case "creatorId":
+                        request.setCreatorId(JsonCodec.nextString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+    }
+
+    public static class RoomMember extends TypeAdapter<RoomMemberRequest> {
+        @Override
+        public void write(JsonWriter out, RoomMemberRequest request) throws IOException {
+            out.beginObject();
+            out.name("userId").value(request.getUserId());
+            out.endObject();
+        }
+
+        @Override
+        public RoomMemberRequest read(JsonReader in) throws IOException {
+            RoomMemberRequest request = new RoomMemberRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("userId".equals(in.nextName())) {
+                    request.setUserId(JsonCodec.nextString(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+    }
+
+    public static class CreateTransaction extends TypeAdapter<CreateTransactionRequest> {
+        @Override
+        public void write(JsonWriter out, CreateTransactionRequest request) throws IOException {
+            out.beginObject();
+            out.name("roomId").value(request.getRoomId());
+            out.name("fromUserId").value(request.getFromUserId());
+            out.name("toUserId").value(request.getToUserId());
+            out.name("amount").value(request.getAmount());
+            out.endObject();
+        }
+
+        @Override
+        public CreateTransactionRequest read(JsonReader in) throws IOException {
+            CreateTransactionRequest request = new CreateTransactionRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "roomId":
+                        request.setRoomId(JsonCodec.nextString(in));
+                        break;
+                    case "fromUserId":
+                        request.setFromUserId(JsonCodec.nextString(in));
+                        break;
+                    case "toUserId":
+                        request.setToUserId(JsonCodec.nextString(in));
+                        break;
+                    case "amount":
+                        request.setAmount(in.nextInt());
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+    }
+
+    public static class CreateTransactionBatch extends TypeAdapter<CreateTransactionBatchRequest> {
+        private final CreateTransaction itemAdapter = new CreateTransaction();
+
+        @Override
+        public void write(JsonWriter out, CreateTransactionBatchRequest request) throws IOException {
+            out.beginObject();
+            out.name("roomId").value(request.getRoomId());
+            out.name("transactions");
+            out.beginArray();
+            for (CreateTransactionRequest item : request.getTransactions()) {
+                itemAdapter.write(out, item);
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public CreateTransactionBatchRequest read(JsonReader in) throws IOException {
+            CreateTransactionBatchRequest request = new CreateTransactionBatchRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "roomId":
+                        request.setRoomId(JsonCodec.nextString(in));
+                        break;
+                    case "transactions":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            request.getTransactions().add(itemAdapter.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+    }
+}
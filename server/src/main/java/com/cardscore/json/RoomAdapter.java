@@ -0,0 +1,105 @@
+package com.cardscore.json;
+
+import com.cardscore.model.Room;
+import com.cardscore.model.Transaction;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Room的流式JSON读写（不使用反射），读取后重建累计余额
+ */
+public class RoomAdapter extends TypeAdapter<Room> {
+    private final TransactionAdapter transactionAdapter;
+
+    public RoomAdapter(TransactionAdapter transactionAdapter) {
+        this.transactionAdapter = transactionAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, Room room) throws IOException {
+        if (room == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(room.getId());
+        out.name("name").value(room.getName());
+        out.name("createdAt").value(room.getCreatedAt());
+        out.name("version").value(room.getVersion());
+        out.name("membersVersion").value(room.getMembersVersion());
+        out.name("memberIds");
+        out.beginArray();
+        for (String memberId : room.getMemberIds()) {
+            out.value(memberId);
+        }
+        out.endArray();
+        out.name("transactions");
+        out.beginArray();
+        for (Transaction transaction : room.getTransactions()) {
+            transactionAdapter.write(out, transaction);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public Room read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String id = null;
+        String name = null;
+        long createdAt = 0;
+        long version = 0;
+        long membersVersion = -1;
+        List<String> memberIds = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = JsonCodec.nextString(in);
+                    break;
+                case "name":
+                    name = JsonCodec.nextString(in);
+                    break;
+                case "createdAt":
+                    createdAt = in.nextLong();
+                    break;
+                case "version":
+                    version = in.nextLong();
+                    break;
+                case "membersVersion":
+                    membersVersion = in.nextLong();
+                    break;
+                case "memberIds":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        memberIds.add(in.nextString());
+                    }
+                    in.endArray();
+                    break;
+                case "transactions":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        transactions.add(transactionAdapter.read(in));
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        // 旧数据没有成员版本号，按当前版本号处理（增量同步时会返回完整成员列表）
+        return new Room(id, name, createdAt, version, membersVersion >= 0 ? membersVersion : version,
+                memberIds, transactions);
+    }
+}
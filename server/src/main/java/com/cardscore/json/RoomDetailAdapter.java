@@ -0,0 +1,90 @@
+package com.cardscore.json;
+
+import com.cardscore.model.RoomDetail;
+import com.cardscore.model.User;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RoomDetail的流式JSON读写（不使用反射）
+ */
+public class RoomDetailAdapter extends TypeAdapter<RoomDetail> {
+    private final RoomAdapter roomAdapter;
+    private final UserAdapter userAdapter;
+
+    public RoomDetailAdapter(RoomAdapter roomAdapter, UserAdapter userAdapter) {
+        this.roomAdapter = roomAdapter;
+        this.userAdapter = userAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, RoomDetail detail) throws IOException {
+        if (detail == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("room");
+        roomAdapter.write(out, detail.getRoom());
+        out.name("members");
+        out.beginArray();
+        for (User member : detail.getMembers()) {
+            userAdapter.write(out, member);
+        }
+        out.endArray();
+        out.name("scores");
+        out.beginObject();
+        for (Map.Entry<String, Integer> score : detail.getScores().entrySet()) {
+            out.name(score.getKey()).value(score.getValue());
+        }
+        out.endObject();
+        out.endObject();
+    }
+
+    @Override
+    public RoomDetail read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        RoomDetail detail = new RoomDetail();
+        List<User> members = new ArrayList<>();
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "room":
+                    detail.setRoom(roomAdapter.read(in));
+                    break;
+                case "members":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        members.add(userAdapter.read(in));
+                    }
+                    in.endArray();
+                    break;
+                case "scores":
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        scores.put(in.nextName(), in.nextInt());
+                    }
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        detail.setMembers(members);
+        detail.setScores(scores);
+        return detail;
+    }
+}
@@ -0,0 +1,76 @@
+package com.cardscore.json;
+
+import com.cardscore.model.RoomSummary;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RoomSummary的流式JSON读写（不使用反射）
+ */
+public class RoomSummaryAdapter extends TypeAdapter<RoomSummary> {
+
+    @Override
+    public void write(JsonWriter out, RoomSummary summary) throws IOException {
+        if (summary == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(summary.getId());
+        out.name("name").value(summary.getName());
+        out.name("createdAt").value(summary.getCreatedAt());
+        out.name("memberIds");
+        out.beginArray();
+        for (String memberId : summary.getMemberIds()) {
+            out.value(memberId);
+        }
+        out.endArray();
+        out.name("transactionCount").value(summary.getTransactionCount());
+        out.endObject();
+    }
+
+    @Override
+    public RoomSummary read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        RoomSummary summary = new RoomSummary();
+        List<String> memberIds = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    summary.setId(JsonCodec.nextString(in));
+                    break;
+                case "name":
+                    summary.setName(JsonCodec.nextString(in));
+                    break;
+                case "createdAt":
+                    summary.setCreatedAt(in.nextLong());
+                    break;
+                case "memberIds":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        memberIds.add(JsonCodec.nextString(in));
+                    }
+                    in.endArray();
+                    break;
+                case "transactionCount":
+                    summary.setTransactionCount(in.nextInt());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        summary.setMemberIds(memberIds);
+        return summary;
+    }
+}
@@ -0,0 +1,48 @@
+package com.cardscore.json;
+
+import java.io.Writer;
+
+/**
+ * 基于StringBuilder的Writer，不像StringWriter那样每次写入都加锁
+ */
+public class StringBuilderWriter extends Writer {
+    private final StringBuilder builder;
+
+    public StringBuilderWriter(int capacity) {
+        this.builder = new StringBuilder(capacity);
+    }
+
+    @Override
+    public void write(int c) {
+        builder.append((char) c);
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+        builder.append(buffer, offset, length);
+    }
+
+    @Override
+    public void write(String str, int offset, int length) {
+        builder.append(str, offset, offset + length);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        builder.append(csq);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package com.cardscore.json;
+
+import com.cardscore.model.Transaction;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Transaction的流式JSON读写（不使用反射）
+ */
+public class TransactionAdapter extends TypeAdapter<Transaction> {
+
+    @Override
+    public void write(JsonWriter out, Transaction transaction) throws IOException {
+        if (transaction == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(transaction.getId());
+        out.name("roomId").value(transaction.getRoomId());
+        out.name("fromUserId").value(transaction.getFromUserId());
+        out.name("toUserId").value(transaction.getToUserId());
+        out.name("amount").value(transaction.getAmount());
+        out.name("timestamp").value(transaction.getTimestamp());
+        out.endObject();
+    }
+
+    @Override
+    public Transaction read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Transaction transaction = new Transaction();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    transaction.setId(JsonCodec.nextString(in));
+                    break;
+                case "roomId":
+                    transaction.setRoomId(JsonCodec.nextString(in));
+                    break;
+                case "fromUserId":
+                    transaction.setFromUserId(JsonCodec.nextString(in));
+                    break;
+                case "toUserId":
+                    transaction.setToUserId(JsonCodec.nextString(in));
+                    break;
+                case "amount":
+                    transaction.setAmount(in.nextInt());
+                    break;
+                case "timestamp":
+                    transaction.setTimestamp(in.nextLong());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return transaction;
+    }
+}
@@ -0,0 +1,61 @@
+package com.cardscore.json;
+
+import com.cardscore.model.TransactionDetail;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * TransactionDetail的流式JSON读写（不使用反射）
+ */
+public class TransactionDetailAdapter extends TypeAdapter<TransactionDetail> {
+    private final TransactionAdapter transactionAdapter;
+
+    public TransactionDetailAdapter(TransactionAdapter transactionAdapter) {
+        this.transactionAdapter = transactionAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, TransactionDetail detail) throws IOException {
+        if (detail == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("transaction");
+        transactionAdapter.write(out, detail.getTransaction());
+        out.name("fromUserName").value(detail.getFromUserName());
+        out.name("toUserName").value(detail.getToUserName());
+        out.endObject();
+    }
+
+    @Override
+    public TransactionDetail read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        TransactionDetail detail = new TransactionDetail();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "transaction":
+                    detail.setTransaction(transactionAdapter.read(in));
+                    break;
+                case "fromUserName":
+                    detail.setFromUserName(JsonCodec.nextString(in));
+                    break;
+                case "toUserName":
+                    detail.setToUserName(JsonCodec.nextString(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return detail;
+    }
+}
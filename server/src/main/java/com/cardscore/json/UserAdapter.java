@@ -0,0 +1,59 @@
+package com.cardscore.json;
+
+import com.cardscore.model.User;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * User的流式JSON读写（不使用反射）
+ */
+public class UserAdapter extends TypeAdapter<User> {
+
+    @Override
+    public void write(JsonWriter out, User user) throws IOException {
+        if (user == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(user.getId());
+        out.name("name").value(user.getName());
+        out.name("createdAt").value(user.getCreatedAt());
+        out.name("currentRoomId").value(user.getCurrentRoomId());
+        out.endObject();
+    }
+
+    @Override
+    public User read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        User user = new User();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    user.setId(JsonCodec.nextString(in));
+                    break;
+                case "name":
+                    user.setName(JsonCodec.nextString(in));
+                    break;
+                case "createdAt":
+                    user.setCreatedAt(in.nextLong());
+                    break;
+                case "currentRoomId":
+                    user.setCurrentRoomId(JsonCodec.nextString(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return user;
+    }
+}
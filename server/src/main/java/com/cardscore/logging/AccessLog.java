@@ -0,0 +1,187 @@
+package com.cardscore.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步访问日志
+ * 请求线程只把记录放入有界队列（满时丢弃并计数），由独立线程格式化并输出；
+ * 支持按路由采样，请求/响应内容只在debug级别记录
+ *
+ * 配置（JVM系统属性）：
+ * cardscore.accesslog.sampleRate=1.0                      默认采样率
+ * cardscore.accesslog.sample./api/rooms/:id/detail=0.01   指定路由的采样率
+ * cardscore.accesslog.bufferSize=8192                     队列容量
+ */
+public class AccessLog {
+    private static final Logger logger = LoggerFactory.getLogger("com.cardscore.access");
+    private static final DateTimeFormatter timeFormatter =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final String PREFIX = "cardscore.accesslog.";
+    private static final int MAX_BODY_LENGTH = 500;
+
+    /**
+     * 一条访问记录
+     */
+    public static class Entry {
+        final long timestamp;
+        final String method;
+        final String path;
+        final String route;
+        final int status;
+        final long durationNanos;
+        final String requestBody;
+        final String responseBody;
+
+        public Entry(long timestamp, String method, String path, String route, int status,
+                     long durationNanos, String requestBody, String responseBody) {
+            this.timestamp = timestamp;
+            this.method = method;
+            this.path = path;
+            this.route = route;
+            this.status = status;
+            this.durationNanos = durationNanos;
+            this.requestBody = requestBody;
+            this.responseBody = responseBody;
+        }
+    }
+
+    private final BlockingQueue<Entry> queue;
+    private final double defaultSampleRate;
+    private final Map<String, Double> sampleRates = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public AccessLog() {
+        this.queue = new ArrayBlockingQueue<>((int) getLong(PREFIX + "bufferSize", 8192));
+        this.defaultSampleRate = getDouble(PREFIX + "sampleRate", 1.0);
+        String samplePrefix = PREFIX + "sample.";
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(samplePrefix)) {
+                sampleRates.put(key.substring(samplePrefix.length()), getDouble(key, defaultSampleRate));
+            }
+        }
+
+        this.writer = new Thread(this::drain, "access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 是否记录这次请求：错误响应总是记录，其余按路由采样率决定
+     */
+    public boolean sample(String route, int status) {
+        if (status >= 400) {
+            return true;
+        }
+        double rate = route != null ? sampleRates.getOrDefault(route, defaultSampleRate) : defaultSampleRate;
+        return rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * 是否记录请求/响应内容
+     */
+    public boolean isBodyLoggingEnabled() {
+        return logger.isDebugEnabled();
+    }
+
+    /**
+     * 放入队列，不阻塞请求线程
+     */
+    public void log(Entry entry) {
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(256);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, 255);
+                for (Entry entry : batch) {
+                    write(entry);
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                batch.clear();
+                System.err.println("Access log writer failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(Entry entry) {
+        String time = timeFormatter.format(Instant.ofEpochMilli(entry.timestamp));
+        String duration = String.format("%.2f", entry.durationNanos / 1_000_000.0);
+        if (entry.requestBody == null && entry.responseBody == null) {
+            logger.info("[{}] method={} path={} route={} status={} durationMs={}",
+                    time, entry.method, entry.path, entry.route, entry.status, duration);
+        } else {
+            logger.debug("[{}] method={} path={} route={} status={} durationMs={} | Body: {} | Response: {}",
+                    time, entry.method, entry.path, entry.route, entry.status, duration,
+                    entry.requestBody, truncate(entry.responseBody));
+        }
+    }
+
+    private static String truncate(String text) {
+        if (text == null || text.length() <= MAX_BODY_LENGTH) {
+            return text;
+        }
+        return text.substring(0, MAX_BODY_LENGTH) + "...";
+    }
+
+    /**
+     * 停止写入线程（队列中剩余的记录会先写完）
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(System.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ", using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static double getDouble(String key, double defaultValue) {
+        try {
+            return Double.parseDouble(System.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ", using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.cardscore.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 进程内指标注册表，以Prometheus文本格式导出
+ * 计数器使用LongAdder，直方图导出为summary（p50/p99/p999）
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private static final String COUNTER = "counter";
+    private static final String GAUGE = "gauge";
+    private static final String SUMMARY = "summary";
+
+    /**
+     * 同名指标（不同标签）
+     */
+    private static class Family {
+        final String type;
+        final String help;
+        final double scale;
+        final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String type, String help, double scale) {
+            this.type = type;
+            this.help = help;
+            this.scale = scale;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * 全局默认注册表
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取或创建计数器，labels为 名称,值,名称,值...
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, COUNTER, help, 1)
+                .series.computeIfAbsent(labelKey(labels), k -> new LongAdder());
+    }
+
+    /**
+     * 获取或创建直方图，导出时数值除以scale（如纳秒除以1e9导出为秒）
+     */
+    public Histogram histogram(String name, String help, double scale, String... labels) {
+        return (Histogram) family(name, SUMMARY, help, scale)
+                .series.computeIfAbsent(labelKey(labels), k -> new Histogram());
+    }
+
+    /**
+     * 注册在导出时计算的指标值（重复注册会替换）
+     */
+    public void gauge(String name, String help, Supplier<Number> supplier, String... labels) {
+        family(name, GAUGE, help, 1).series.put(labelKey(labels), supplier);
+    }
+
+    private Family family(String name, String type, String help, double scale) {
+        Family family = families.computeIfAbsent(name, n -> new Family(type, help, scale));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * 导出为Prometheus文本格式
+     */
+    @SuppressWarnings("unchecked")
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Object> series : new TreeMap<>(family.series).entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof LongAdder) {
+                    sample(out, name, labels, ((LongAdder) metric).sum());
+                } else if (metric instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric;
+                    for (double quantile : QUANTILES) {
+                        String quantileLabel = "quantile=\"" + quantile + "\"";
+                        sample(out, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+                                histogram.percentile(quantile) / family.scale);
+                    }
+                    sample(out, name + "_sum", labels, histogram.getSum() / family.scale);
+                    sample(out, name + "_count", labels, histogram.getCount());
+                } else {
+                    Number value;
+                    try {
+                        value = ((Supplier<Number>) metric).get();
+                    } catch (RuntimeException e) {
+                        continue;
+                    }
+                    sample(out, name, labels, value);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Number value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value instanceof Double || value instanceof Float) {
+            out.append(value.doubleValue());
+        } else {
+            out.append(value.longValue());
+        }
+        out.append('\n');
+    }
+
+    private static String labelKey(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return key.toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,28 @@
+package com.cardscore.model;
+
+/**
+ * 创建房间请求
+ */
+public class CreateRoomRequest {
+    private String name;
+    private String creatorId;
+
+    public CreateRoomRequest() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getCreatorId() {
+        return creatorId;
+    }
+
+    public void setCreatorId(String creatorId) {
+        this.creatorId = creatorId;
+    }
+}
@@ -0,0 +1,32 @@
+package com.cardscore.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量转账请求（同一房间的多笔转账，如一局结束时的结算）
+ */
+public class CreateTransactionBatchRequest {
+    private String roomId;
+    private List<CreateTransactionRequest> transactions;
+
+    public CreateTransactionBatchRequest() {
+        this.transactions = new ArrayList<>();
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public List<CreateTransactionRequest> getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(List<CreateTransactionRequest> transactions) {
+        this.transactions = transactions;
+    }
+}
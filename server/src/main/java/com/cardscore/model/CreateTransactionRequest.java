@@ -0,0 +1,46 @@
+package com.cardscore.model;
+
+/**
+ * 创建转账请求
+ */
+public class CreateTransactionRequest {
+    private String roomId;
+    private String fromUserId;
+    private String toUserId;
+    private int amount;
+
+    public CreateTransactionRequest() {
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public String getFromUserId() {
+        return fromUserId;
+    }
+
+    public void setFromUserId(String fromUserId) {
+        this.fromUserId = fromUserId;
+    }
+
+    public String getToUserId() {
+        return toUserId;
+    }
+
+    public void setToUserId(String toUserId) {
+        this.toUserId = toUserId;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public void setAmount(int amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,19 @@
+package com.cardscore.model;
+
+/**
+ * 创建用户请求
+ */
+public class CreateUserRequest {
+    private String name;
+
+    public CreateUserRequest() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -1,91 +1,197 @@
 package com.cardscore.model;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * 房间实体类
+ * 房间实体类（不可变快照）
+ * 每次变更生成新的快照，读取方和持久化始终看到一致的数据，不需要加锁；
+ * 转账记录按列保存在TransactionList中并与旧快照共享，追加不复制整个列表。
+ * 变更快照由LocalStorage以“当前版本号+1”发布，成员变更和新增转账记录都标记为这个版本号，用于增量同步
  */
-public class Room {
-    private String id;
-    private String name;
-    private long createdAt;
-    private List<String> memberIds;  // 成员用户ID列表
-    private List<Transaction> transactions;  // 转账记录
+public final class Room {
+    private final String id;
+    private final String name;
+    private final long createdAt;
+    private final long version;  // 版本号，房间每次变更时递增
+    private final long membersVersion;  // 成员列表最后一次变更时的版本号
+    private final List<String> memberIds;  // 成员用户ID列表
+    private final TransactionList transactions;  // 转账记录
+    private final transient Map<String, Integer> balances;  // 按转账记录累计的余额，不持久化
 
-    public Room() {
-        this.memberIds = new ArrayList<>();
-        this.transactions = new ArrayList<>();
+    public Room(String id, String name, long createdAt) {
+        this(id, name, createdAt, 0, 0, Collections.emptyList(), TransactionList.empty(id),
+                Collections.emptyMap());
     }
 
-    public Room(String id, String name, long createdAt) {
+    /**
+     * 从持久化数据创建快照，并根据转账记录计算累计余额
+     */
+    public Room(String id, String name, long createdAt, long version,
+                List<String> memberIds, List<Transaction> transactions) {
+        this(id, name, createdAt, version, version, memberIds, transactions);
+    }
+
+    /**
+     * 从持久化数据创建快照（包含成员列表的版本号）
+     */
+    public Room(String id, String name, long createdAt, long version, long membersVersion,
+                List<String> memberIds, List<Transaction> transactions) {
+        this(id, name, createdAt, version, membersVersion, Collections.unmodifiableList(new ArrayList<>(memberIds)),
+                TransactionList.copyOf(id, transactions, version), null);
+    }
+
+    private Room(String id, String name, long createdAt, long version, long membersVersion,
+                 List<String> memberIds, TransactionList transactions, Map<String, Integer> balances) {
         this.id = id;
         this.name = name;
         this.createdAt = createdAt;
-        this.memberIds = new ArrayList<>();
-        this.transactions = new ArrayList<>();
+        this.version = version;
+        this.membersVersion = membersVersion;
+        this.memberIds = memberIds;
+        this.transactions = transactions;
+        this.balances = balances != null ? balances : transactions.sumBalances();
     }
 
     public String getId() {
         return id;
     }
 
-    public void setId(String id) {
-        this.id = id;
-    }
-
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public long getCreatedAt() {
         return createdAt;
     }
 
-    public void setCreatedAt(long createdAt) {
-        this.createdAt = createdAt;
+    public long getVersion() {
+        return version;
+    }
+
+    public long getMembersVersion() {
+        return membersVersion;
     }
 
+    /**
+     * 成员用户ID列表（只读）
+     */
     public List<String> getMemberIds() {
         return memberIds;
     }
 
-    public void setMemberIds(List<String> memberIds) {
-        this.memberIds = memberIds;
+    /**
+     * 转账记录（只读，读取元素时才生成Transaction对象）
+     */
+    public TransactionList getTransactions() {
+        return transactions;
     }
 
-    public List<Transaction> getTransactions() {
-        return transactions;
+    /**
+     * 版本号大于since之后新增的第一条转账记录的位置
+     * 从文件加载的记录都记为加载时的版本号，since早于它时从头开始
+     */
+    public int getTransactionOffsetAfter(long since) {
+        return transactions.offsetAfter(since);
     }
 
-    public void setTransactions(List<Transaction> transactions) {
-        this.transactions = transactions;
+    /**
+     * 返回指定版本号的快照
+     */
+    public Room withVersion(long version) {
+        return new Room(id, name, createdAt, version, membersVersion, memberIds, transactions, balances);
     }
 
     /**
-     * 添加成员
+     * 返回指定版本号的快照，同时记录成员列表在该版本变更（创建和整体更新房间时使用）
      */
-    public void addMember(String userId) {
-        if (!memberIds.contains(userId)) {
-            memberIds.add(userId);
+    public Room withVersion(long version, long membersVersion) {
+        return new Room(id, name, createdAt, version, membersVersion, memberIds, transactions, balances);
+    }
+
+    /**
+     * 返回加入成员后的快照（已是成员则返回当前快照）
+     */
+    public Room withMember(String userId) {
+        if (memberIds.contains(userId)) {
+            return this;
+        }
+        List<String> members = new ArrayList<>(memberIds.size() + 1);
+        members.addAll(memberIds);
+        members.add(userId);
+        return new Room(id, name, createdAt, version, version + 1, Collections.unmodifiableList(members),
+                transactions, balances);
+    }
+
+    /**
+     * 返回移除成员后的快照
+     */
+    public Room withoutMembers(Collection<String> userIds) {
+        List<String> members = new ArrayList<>(memberIds);
+        if (!members.removeAll(userIds)) {
+            return this;
         }
+        return new Room(id, name, createdAt, version, version + 1, Collections.unmodifiableList(members),
+                transactions, balances);
+    }
+
+    /**
+     * 返回添加转账记录后的快照
+     */
+    public Room withTransaction(Transaction transaction) {
+        return withTransactions(List.of(transaction));
+    }
+
+    /**
+     * 返回添加多条转账记录后的快照
+     */
+    public Room withTransactions(List<Transaction> added) {
+        Map<String, Integer> updated = new HashMap<>(balances);
+        for (Transaction transaction : added) {
+            applyTo(updated, transaction);
+        }
+        return new Room(id, name, createdAt, version, membersVersion, memberIds,
+                transactions.appendAll(added, version + 1), Collections.unmodifiableMap(updated));
+    }
+
+    /**
+     * 返回根据转账记录重新计算累计余额的快照
+     */
+    public Room withRebuiltScores() {
+        return new Room(id, name, createdAt, version, membersVersion, memberIds, transactions, null);
+    }
+
+    private static void applyTo(Map<String, Integer> balances, Transaction transaction) {
+        int amount = transaction.getAmount();
+        balances.merge(transaction.getFromUserId(), -amount, Integer::sum);
+        balances.merge(transaction.getToUserId(), amount, Integer::sum);
+    }
+
+    /**
+     * 获取每个用户的总分（基于累计余额，与转账记录数量无关）
+     */
+    public Map<String, Integer> getScores() {
+        Map<String, Integer> scores = new HashMap<>();
+        for (String memberId : memberIds) {
+            scores.put(memberId, 0);
+        }
+        scores.putAll(balances);
+        return scores;
     }
 
     /**
-     * 添加转账记录
+     * 校验累计余额与完整重算的结果是否一致
      */
-    public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
+    public boolean verifyScores() {
+        return getScores().equals(calculateScores());
     }
 
     /**
-     * 计算每个用户的总分
+     * 重放所有转账记录计算每个用户的总分
      */
     public Map<String, Integer> calculateScores() {
         Map<String, Integer> scores = new HashMap<>();
@@ -114,6 +220,8 @@ public class Room {
                 "id='" + id + '\'' +
                 ", name='" + name + '\'' +
                 ", createdAt=" + createdAt +
+                ", version=" + version +
+                ", membersVersion=" + membersVersion +
                 ", memberIds=" + memberIds +
                 ", transactions=" + transactions.size() +
                 '}';
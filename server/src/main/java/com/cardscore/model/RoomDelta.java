@@ -0,0 +1,95 @@
+package com.cardscore.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 房间增量同步结果：客户端已有版本之后新增的转账记录、成员变更和最新分数
+ * transactions从offset位置开始，客户端丢弃本地offset之后的记录再追加即可；
+ * members为空表示成员列表没有变化，scores只在房间详情中返回
+ */
+public class RoomDelta<T> {
+    private String roomId;
+    private long version;
+    private int offset;
+    private int transactionCount;
+    private List<T> transactions;
+    private List<String> memberIds;
+    private List<User> members;
+    private Map<String, Integer> scores;
+
+    public RoomDelta() {
+    }
+
+    public RoomDelta(String roomId, long version, int offset, int transactionCount, List<T> transactions) {
+        this.roomId = roomId;
+        this.version = version;
+        this.offset = offset;
+        this.transactionCount = transactionCount;
+        this.transactions = transactions;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    public void setTransactionCount(int transactionCount) {
+        this.transactionCount = transactionCount;
+    }
+
+    public List<T> getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(List<T> transactions) {
+        this.transactions = transactions;
+    }
+
+    public List<String> getMemberIds() {
+        return memberIds;
+    }
+
+    public void setMemberIds(List<String> memberIds) {
+        this.memberIds = memberIds;
+    }
+
+    public List<User> getMembers() {
+        return members;
+    }
+
+    public void setMembers(List<User> members) {
+        this.members = members;
+    }
+
+    public Map<String, Integer> getScores() {
+        return scores;
+    }
+
+    public void setScores(Map<String, Integer> scores) {
+        this.scores = scores;
+    }
+}
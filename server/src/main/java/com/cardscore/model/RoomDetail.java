@@ -0,0 +1,46 @@
+package com.cardscore.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 房间详情（房间、成员信息和分数）
+ */
+public class RoomDetail {
+    private Room room;
+    private List<User> members;
+    private Map<String, Integer> scores;
+
+    public RoomDetail() {
+    }
+
+    public RoomDetail(Room room, List<User> members, Map<String, Integer> scores) {
+        this.room = room;
+        this.members = members;
+        this.scores = scores;
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+
+    public void setRoom(Room room) {
+        this.room = room;
+    }
+
+    public List<User> getMembers() {
+        return members;
+    }
+
+    public void setMembers(List<User> members) {
+        this.members = members;
+    }
+
+    public Map<String, Integer> getScores() {
+        return scores;
+    }
+
+    public void setScores(Map<String, Integer> scores) {
+        this.scores = scores;
+    }
+}
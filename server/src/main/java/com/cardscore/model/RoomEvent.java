@@ -0,0 +1,86 @@
+package com.cardscore.model;
+
+import java.util.List;
+
+/**
+ * 房间变更事件（推送给订阅客户端的精简数据）
+ */
+public class RoomEvent {
+    public static final String JOIN = "join";
+    public static final String LEAVE = "leave";
+    public static final String TRANSACTION = "transaction";
+    public static final String TRANSACTIONS = "transactions";
+
+    private String type;
+    private String roomId;
+    private long version;
+    private String userId;
+    private Transaction transaction;
+    private List<Transaction> transactions;
+
+    public RoomEvent() {
+    }
+
+    public RoomEvent(String type, String roomId, long version) {
+        this.type = type;
+        this.roomId = roomId;
+        this.version = version;
+    }
+
+    public static RoomEvent join(Room room, String userId) {
+        RoomEvent event = new RoomEvent(JOIN, room.getId(), room.getVersion());
+        event.userId = userId;
+        return event;
+    }
+
+    public static RoomEvent leave(Room room, String userId) {
+        RoomEvent event = new RoomEvent(LEAVE, room.getId(), room.getVersion());
+        event.userId = userId;
+        return event;
+    }
+
+    public static RoomEvent transaction(Room room, Transaction transaction) {
+        RoomEvent event = new RoomEvent(TRANSACTION, room.getId(), room.getVersion());
+        event.transaction = transaction;
+        return event;
+    }
+
+    public static RoomEvent transactions(Room room, List<Transaction> transactions) {
+        RoomEvent event = new RoomEvent(TRANSACTIONS, room.getId(), room.getVersion());
+        event.transactions = transactions;
+        return event;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public String toString() {
+        return "RoomEvent{" +
+                "type='" + type + '\'' +
+                ", roomId='" + roomId + '\'' +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -0,0 +1,19 @@
+package com.cardscore.model;
+
+/**
+ * 加入/退出房间请求
+ */
+public class RoomMemberRequest {
+    private String userId;
+
+    public RoomMemberRequest() {
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+}
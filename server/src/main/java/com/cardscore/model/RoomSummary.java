@@ -0,0 +1,66 @@
+package com.cardscore.model;
+
+import java.util.List;
+
+/**
+ * 房间摘要（不包含转账记录），用于房间列表和搜索，不需要读取房间文件
+ * 转账记录通过房间的转账分页接口获取
+ */
+public class RoomSummary {
+    private String id;
+    private String name;
+    private long createdAt;
+    private List<String> memberIds;
+    private int transactionCount;
+
+    public RoomSummary() {
+    }
+
+    public RoomSummary(String id, String name, long createdAt, List<String> memberIds, int transactionCount) {
+        this.id = id;
+        this.name = name;
+        this.createdAt = createdAt;
+        this.memberIds = memberIds;
+        this.transactionCount = transactionCount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<String> getMemberIds() {
+        return memberIds;
+    }
+
+    public void setMemberIds(List<String> memberIds) {
+        this.memberIds = memberIds;
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    public void setTransactionCount(int transactionCount) {
+        this.transactionCount = transactionCount;
+    }
+}
@@ -0,0 +1,43 @@
+package com.cardscore.model;
+
+/**
+ * 转账详情（包含转账双方的用户名）
+ */
+public class TransactionDetail {
+    private Transaction transaction;
+    private String fromUserName;
+    private String toUserName;
+
+    public TransactionDetail() {
+    }
+
+    public TransactionDetail(Transaction transaction, String fromUserName, String toUserName) {
+        this.transaction = transaction;
+        this.fromUserName = fromUserName;
+        this.toUserName = toUserName;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public void setTransaction(Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    public String getFromUserName() {
+        return fromUserName;
+    }
+
+    public void setFromUserName(String fromUserName) {
+        this.fromUserName = fromUserName;
+    }
+
+    public String getToUserName() {
+        return toUserName;
+    }
+
+    public void setToUserName(String toUserName) {
+        this.toUserName = toUserName;
+    }
+}
@@ -0,0 +1,277 @@
+package com.cardscore.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+/**
+ * 不可变的转账记录列表，按列保存在基本类型数组中，追加时与旧版本共享底层数组
+ * 转账双方保存为房间内参与者字典的下标，标准格式的UUID保存为两个long，房间ID整个列表只保存一次；
+ * get()时才生成Transaction对象，累计余额等扫描直接读取数组。
+ * 每个版本只读取自己长度以内的元素；从最新版本追加时直接写入数组的空闲位置（均摊O(1)），
+ * 从旧版本追加或数组已满时才复制。
+ * 同时记录每条记录追加时的房间版本号，用于按版本号增量同步
+ */
+public final class TransactionList extends AbstractList<Transaction> implements RandomAccess {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final String[] NO_USERS = new String[0];
+    private static final String NO_ID = new String();  // 没有ID的记录，按引用比较
+
+    /**
+     * 定长的列数组，容量不足时整体复制
+     */
+    private static final class Columns {
+        private final int[] fromUsers;  // 参与者字典下标
+        private final int[] toUsers;
+        private final int[] amounts;
+        private final long[] timestamps;
+        private final long[] versions;  // 追加时的房间版本号（从文件加载的记录为加载时的房间版本号）
+        private final long[] idHigh;    // UUID的高64位
+        private final long[] idLow;     // UUID的低64位
+
+        private Columns(int capacity) {
+            this(new int[capacity], new int[capacity], new int[capacity], new long[capacity],
+                    new long[capacity], new long[capacity], new long[capacity]);
+        }
+
+        private Columns(int[] fromUsers, int[] toUsers, int[] amounts, long[] timestamps,
+                        long[] versions, long[] idHigh, long[] idLow) {
+            this.fromUsers = fromUsers;
+            this.toUsers = toUsers;
+            this.amounts = amounts;
+            this.timestamps = timestamps;
+            this.versions = versions;
+            this.idHigh = idHigh;
+            this.idLow = idLow;
+        }
+
+        private int capacity() {
+            return amounts.length;
+        }
+
+        private Columns grow(int capacity) {
+            return new Columns(Arrays.copyOf(fromUsers, capacity), Arrays.copyOf(toUsers, capacity),
+                    Arrays.copyOf(amounts, capacity), Arrays.copyOf(timestamps, capacity),
+                    Arrays.copyOf(versions, capacity), Arrays.copyOf(idHigh, capacity), Arrays.copyOf(idLow, capacity));
+        }
+    }
+
+    /**
+     * 共享数组的状态：已使用长度（只有长度等于它的版本可以原地追加）、参与者字典和非UUID格式的ID
+     * 字典和ID数组只追加，扩容时替换为新数组，旧版本继续使用自己创建时的数组
+     */
+    private static final class Buffer {
+        private int used;
+        private String[] users;
+        private int userCount;
+        private final Map<String, Integer> userIndex;
+        private String[] otherIds;  // 不是标准UUID的ID，全部是UUID时为null
+
+        private Buffer(String[] users, int userCount, Map<String, Integer> userIndex, String[] otherIds) {
+            this.users = users;
+            this.userCount = userCount;
+            this.userIndex = userIndex;
+            this.otherIds = otherIds;
+        }
+
+        private int indexOf(String userId) {
+            Integer index = userIndex.get(userId);
+            if (index != null) {
+                return index;
+            }
+            if (userCount == users.length) {
+                users = Arrays.copyOf(users, Math.max(4, users.length * 2));
+            }
+            users[userCount] = userId;
+            userIndex.put(userId, userCount);
+            return userCount++;
+        }
+    }
+
+    private final String roomId;
+    private final Buffer buffer;
+    private final Columns columns;
+    private final String[] users;     // 创建时的参与者字典，包含本版本用到的所有下标
+    private final String[] otherIds;  // 创建时的非UUID格式ID，本版本全部是UUID时可能为null
+    private final int size;
+
+    private TransactionList(String roomId, Buffer buffer, Columns columns, String[] users, String[] otherIds, int size) {
+        this.roomId = roomId;
+        this.buffer = buffer;
+        this.columns = columns;
+        this.users = users;
+        this.otherIds = otherIds;
+        this.size = size;
+    }
+
+    public static TransactionList empty(String roomId) {
+        return new TransactionList(roomId, new Buffer(NO_USERS, 0, new HashMap<>(), null),
+                new Columns(0), NO_USERS, null, 0);
+    }
+
+    /**
+     * 创建房间的转账记录列表，记录中的房间ID以参数为准，版本号记为version
+     */
+    public static TransactionList copyOf(String roomId, Collection<? extends Transaction> transactions, long version) {
+        if (transactions instanceof TransactionList && Objects.equals(((TransactionList) transactions).roomId, roomId)) {
+            return (TransactionList) transactions;
+        }
+        return empty(roomId).appendAll(transactions, version);
+    }
+
+    /**
+     * 返回追加一条记录后的新列表，当前列表不变
+     */
+    public TransactionList append(Transaction transaction, long version) {
+        return appendAll(List.of(transaction), version);
+    }
+
+    /**
+     * 返回追加多条记录后的新列表，当前列表不变
+     */
+    public TransactionList appendAll(Collection<? extends Transaction> transactions, long version) {
+        int count = transactions.size();
+        if (count == 0) {
+            return this;
+        }
+        int newSize = size + count;
+        synchronized (buffer) {
+            if (buffer.used == size && newSize <= columns.capacity()) {
+                fill(buffer, columns, transactions, version);
+                buffer.used = newSize;
+                return new TransactionList(roomId, buffer, columns, buffer.users, buffer.otherIds, newSize);
+            }
+
+            int capacity = Math.max(INITIAL_CAPACITY, Math.max(newSize, size * 2));
+            Columns grown = columns.grow(capacity);
+            Buffer owned = new Buffer(buffer.users.clone(), buffer.userCount, new HashMap<>(buffer.userIndex),
+                    buffer.otherIds != null ? Arrays.copyOf(buffer.otherIds, capacity) : null);
+            fill(owned, grown, transactions, version);
+            owned.used = newSize;
+            return new TransactionList(roomId, owned, grown, owned.users, owned.otherIds, newSize);
+        }
+    }
+
+    private void fill(Buffer target, Columns columns, Collection<? extends Transaction> transactions, long version) {
+        int i = size;
+        for (Transaction transaction : transactions) {
+            columns.fromUsers[i] = target.indexOf(transaction.getFromUserId());
+            columns.toUsers[i] = target.indexOf(transaction.getToUserId());
+            columns.amounts[i] = transaction.getAmount();
+            columns.timestamps[i] = transaction.getTimestamp();
+            columns.versions[i] = version;
+            String id = transaction.getId();
+            if (Uuids.isCanonical(id)) {
+                UUID uuid = UUID.fromString(id);
+                columns.idHigh[i] = uuid.getMostSignificantBits();
+                columns.idLow[i] = uuid.getLeastSignificantBits();
+                if (target.otherIds != null) {
+                    target.otherIds[i] = null;  // 可能是从旧版本复制来的其他记录
+                }
+            } else {
+                if (target.otherIds == null) {
+                    target.otherIds = new String[columns.capacity()];
+                }
+                target.otherIds[i] = id != null ? id : NO_ID;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * 版本号大于since的第一条记录的位置（没有则为size），版本号按追加顺序递增，二分查找
+     */
+    public int offsetAfter(long since) {
+        long[] versions = columns.versions;
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (versions[mid] > since) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 按参与者累计的余额（转出为负、转入为正），直接扫描数组，不生成Transaction对象
+     */
+    public Map<String, Integer> sumBalances() {
+        int[] sums = new int[users.length];
+        boolean[] touched = new boolean[users.length];
+        int[] fromUsers = columns.fromUsers;
+        int[] toUsers = columns.toUsers;
+        int[] amounts = columns.amounts;
+        for (int i = 0; i < size; i++) {
+            sums[fromUsers[i]] -= amounts[i];
+            sums[toUsers[i]] += amounts[i];
+            touched[fromUsers[i]] = true;
+            touched[toUsers[i]] = true;
+        }
+        Map<String, Integer> balances = new HashMap<>();
+        for (int user = 0; user < users.length; user++) {
+            if (touched[user]) {
+                balances.put(users[user], sums[user]);
+            }
+        }
+        return Collections.unmodifiableMap(balances);
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getId(int index) {
+        Objects.checkIndex(index, size);
+        if (otherIds != null && otherIds[index] != null) {
+            String id = otherIds[index];
+            return id != NO_ID ? id : null;
+        }
+        return new UUID(columns.idHigh[index], columns.idLow[index]).toString();
+    }
+
+    public String getFromUserId(int index) {
+        Objects.checkIndex(index, size);
+        return users[columns.fromUsers[index]];
+    }
+
+    public String getToUserId(int index) {
+        Objects.checkIndex(index, size);
+        return users[columns.toUsers[index]];
+    }
+
+    public int getAmount(int index) {
+        Objects.checkIndex(index, size);
+        return columns.amounts[index];
+    }
+
+    public long getTimestamp(int index) {
+        Objects.checkIndex(index, size);
+        return columns.timestamps[index];
+    }
+
+    /**
+     * 生成第index条记录的Transaction对象（每次调用返回新对象，修改它不影响列表）
+     */
+    @Override
+    public Transaction get(int index) {
+        Objects.checkIndex(index, size);
+        return new Transaction(getId(index), roomId, users[columns.fromUsers[index]], users[columns.toUsers[index]],
+                columns.amounts[index], columns.timestamps[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,30 @@
+package com.cardscore.model;
+
+/**
+ * UUID字符串的紧凑表示：标准格式（小写）的UUID可以按两个long保存，还原后与原字符串完全一致
+ */
+public final class Uuids {
+
+    private Uuids() {
+    }
+
+    /**
+     * 是否是标准格式（36个字符、小写十六进制）的UUID
+     */
+    public static boolean isCanonical(String value) {
+        if (value == null || value.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
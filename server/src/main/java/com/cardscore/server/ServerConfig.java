@@ -0,0 +1,107 @@
+package com.cardscore.server;
+
+/**
+ * HTTP服务配置，通过JVM系统属性设置，例如：
+ * java -Dcardscore.server.virtualThreads=true -jar card-score-server.jar
+ */
+public class ServerConfig {
+    private static final String PREFIX = "cardscore.server.";
+
+    private boolean virtualThreads = false;
+    private int maxThreads = -1;  // 小于等于0时使用Spark默认线程池
+    private int minThreads = -1;
+    private int idleTimeoutMs = -1;
+    private int eventQueueSize = 256;           // 每个事件推送连接最多排队的消息数
+    private int eventTimeoutMs = 30 * 60_000;   // 事件推送连接的最长保持时间
+
+    public ServerConfig() {
+    }
+
+    /**
+     * 从系统属性读取配置，未设置的项使用默认值
+     */
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.virtualThreads = Boolean.parseBoolean(
+                System.getProperty(PREFIX + "virtualThreads", String.valueOf(config.virtualThreads)));
+        config.maxThreads = getInt(PREFIX + "maxThreads", config.maxThreads);
+        config.minThreads = getInt(PREFIX + "minThreads", config.minThreads);
+        config.idleTimeoutMs = getInt(PREFIX + "idleTimeoutMs", config.idleTimeoutMs);
+        config.eventQueueSize = Math.max(1, getInt(PREFIX + "eventQueueSize", config.eventQueueSize));
+        config.eventTimeoutMs = getInt(PREFIX + "eventTimeoutMs", config.eventTimeoutMs);
+        return config;
+    }
+
+    private static int getInt(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public void setMinThreads(int minThreads) {
+        this.minThreads = minThreads;
+    }
+
+    public int getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    public void setIdleTimeoutMs(int idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public int getEventQueueSize() {
+        return eventQueueSize;
+    }
+
+    public void setEventQueueSize(int eventQueueSize) {
+        this.eventQueueSize = eventQueueSize;
+    }
+
+    public int getEventTimeoutMs() {
+        return eventTimeoutMs;
+    }
+
+    public void setEventTimeoutMs(int eventTimeoutMs) {
+        this.eventTimeoutMs = eventTimeoutMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig{" +
+                "virtualThreads=" + virtualThreads +
+                ", maxThreads=" + maxThreads +
+                ", minThreads=" + minThreads +
+                ", idleTimeoutMs=" + idleTimeoutMs +
+                ", eventQueueSize=" + eventQueueSize +
+                ", eventTimeoutMs=" + eventTimeoutMs +
+                '}';
+    }
+}
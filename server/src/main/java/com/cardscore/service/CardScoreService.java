@@ -1,20 +1,38 @@
 package com.cardscore.service;
 
+import com.cardscore.model.CreateTransactionRequest;
+import com.cardscore.model.Page;
 import com.cardscore.model.Room;
+import com.cardscore.model.RoomDelta;
+import com.cardscore.model.RoomDetail;
+import com.cardscore.model.RoomEvent;
+import com.cardscore.model.RoomSummary;
 import com.cardscore.model.Transaction;
+import com.cardscore.model.TransactionDetail;
 import com.cardscore.model.User;
 import com.cardscore.storage.LocalStorage;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 /**
  * 业务服务层
  */
 public class CardScoreService {
+    public static final int MAX_BATCH_SIZE = 100;
+
     private final LocalStorage storage;
+    private final RoomEventBus eventBus;
+    private final MembershipReconciler reconciler;  // 可为空（如基准测试），此时不做后台成员修复
+
+    public CardScoreService(LocalStorage storage, RoomEventBus eventBus) {
+        this(storage, eventBus, null);
+    }
 
-    public CardScoreService(LocalStorage storage) {
+    public CardScoreService(LocalStorage storage, RoomEventBus eventBus, MembershipReconciler reconciler) {
         this.storage = storage;
+        this.eventBus = eventBus;
+        this.reconciler = reconciler;
     }
 
     // ============= User Services =============
@@ -27,17 +45,9 @@ public class CardScoreService {
             throw new Exception("用户名不能为空");
         }
 
-        // 检查用户名是否重复，如果存在则返回现有用户
-        User existing = storage.getUserByName(name);
-        if (existing != null) {
-            return existing;
-        }
-
-        String userId = UUID.randomUUID().toString();
-        User user = new User(userId, name, System.currentTimeMillis());
-        storage.addUser(user);
-        
-        return user;
+        // 按用户名原子地查找或创建，如果存在则返回现有用户
+        return storage.getOrCreateUser(name,
+                n -> new User(UUID.randomUUID().toString(), n, System.currentTimeMillis()));
     }
 
     /**
@@ -47,6 +57,17 @@ public class CardScoreService {
         return storage.getAllUsers();
     }
 
+    /**
+     * 按创建时间分页获取用户
+     */
+    public Page<User> getUsersPage(String after, int limit) throws Exception {
+        try {
+            return storage.getUsersPage(after, Page.clampLimit(limit));
+        } catch (IllegalArgumentException e) {
+            throw new Exception("无效的分页游标");
+        }
+    }
+
     /**
      * 根据ID获取用户
      */
@@ -58,6 +79,19 @@ public class CardScoreService {
         return user;
     }
 
+    /**
+     * 删除用户，用户所在房间的成员由后台修复任务移除
+     */
+    public void deleteUser(String userId) throws Exception {
+        if (userId == null || storage.getUser(userId) == null) {
+            throw new Exception("用户不存在");
+        }
+        storage.deleteUser(userId);
+        if (reconciler != null) {
+            reconciler.trigger();
+        }
+    }
+
     // ============= Room Services =============
 
     /**
@@ -75,27 +109,48 @@ public class CardScoreService {
         }
 
         String roomId = UUID.randomUUID().toString();
-        Room room = new Room(roomId, name, System.currentTimeMillis());
-        room.addMember(creatorId);
+        Room room = new Room(roomId, name, System.currentTimeMillis()).withMember(creatorId);
         
         storage.addRoom(room);
-        return room;
+        return storage.getRoom(roomId);
     }
 
     /**
-     * 获取所有房间
+     * 获取所有房间的摘要
      */
-    public List<Room> getAllRooms() {
+    public List<RoomSummary> getAllRooms() {
         return storage.getAllRooms();
     }
 
     /**
-     * 搜索房间
+     * 按创建时间分页获取房间摘要，转账记录通过房间的转账分页接口获取
      */
-    public List<Room> searchRooms(String keyword) {
+    public Page<RoomSummary> getRoomsPage(String after, int limit) throws Exception {
+        try {
+            return storage.getRoomsPage(after, Page.clampLimit(limit));
+        } catch (IllegalArgumentException e) {
+            throw new Exception("无效的分页游标");
+        }
+    }
+
+    /**
+     * 搜索房间（最多返回Page.DEFAULT_LIMIT个）
+     */
+    public List<RoomSummary> searchRooms(String keyword) {
         return storage.searchRooms(keyword);
     }
 
+    /**
+     * 分页搜索房间，数量按分页的规则限制：未指定时默认50，最多1000
+     */
+    public Page<RoomSummary> searchRooms(String keyword, String after, int limit, String sort) throws Exception {
+        try {
+            return storage.searchRooms(keyword, after, Page.clampLimit(limit), sort);
+        } catch (IllegalArgumentException e) {
+            throw new Exception("无效的分页游标");
+        }
+    }
+
     /**
      * 根据ID获取房间
      */
@@ -107,6 +162,14 @@ public class CardScoreService {
         return room;
     }
 
+    /**
+     * 获取房间当前版本号，房间不存在时返回-1
+     */
+    public long getRoomVersion(String roomId) {
+        Room room = storage.getRoom(roomId);
+        return room != null ? room.getVersion() : -1;
+    }
+
     /**
      * 加入房间
      */
@@ -121,12 +184,27 @@ public class CardScoreService {
             throw new Exception("用户不存在");
         }
 
-        room.addMember(userId);
-        storage.updateRoom(room);
-        
-        // 更新用户的当前房间ID
-        user.setCurrentRoomId(roomId);
-        storage.updateUser(user);
+        // 加入房间并更新用户的当前房间ID（事件在房间锁内放入待发送队列，保证版本号顺序；释放锁并等待日志持久化后推送）
+        // 已是成员时房间不变：不递增版本号、不推送事件，当前房间ID也相同时不写日志
+        long sequence;
+        Lock lock = storage.getRoomLock(roomId);
+        lock.lock();
+        try {
+            Room current = storage.getRoom(roomId);
+            boolean member = current != null && current.getMemberIds().contains(userId);
+            if (member && roomId.equals(user.getCurrentRoomId())) {
+                return current;
+            }
+            sequence = storage.joinRoom(roomId, userId);
+            room = storage.getRoom(roomId);
+            if (!member) {
+                eventBus.publish(RoomEvent.join(room, userId));
+            }
+        } finally {
+            lock.unlock();
+        }
+        storage.awaitDurable(sequence);
+        eventBus.flush(roomId);
         
         return room;
     }
@@ -145,60 +223,109 @@ public class CardScoreService {
             throw new Exception("用户不存在");
         }
 
-        // 从房间成员列表中移除
-        room.getMemberIds().remove(userId);
-        storage.updateRoom(room);
-        
-        // 清除用户的当前房间ID
-        if (roomId.equals(user.getCurrentRoomId())) {
-            user.setCurrentRoomId(null);
-            storage.updateUser(user);
+        // 从房间成员列表中移除，并清除用户的当前房间ID
+        long sequence;
+        Lock lock = storage.getRoomLock(roomId);
+        lock.lock();
+        try {
+            sequence = storage.leaveRoom(roomId, userId);
+            eventBus.publish(RoomEvent.leave(storage.getRoom(roomId), userId));
+        } finally {
+            lock.unlock();
         }
+        storage.awaitDurable(sequence);
+        eventBus.flush(roomId);
     }
 
     /**
      * 获取房间详情（包含用户信息和分数）
+     * 只读：不存在的用户直接跳过，由MembershipReconciler在后台从房间中移除
      */
-    public Map<String, Object> getRoomDetail(String roomId) throws Exception {
+    public RoomDetail getRoomDetail(String roomId) throws Exception {
         Room room = storage.getRoom(roomId);
         if (room == null) {
             throw new Exception("房间不存在");
         }
 
-        Map<String, Object> detail = new HashMap<>();
-        detail.put("room", room);
+        // 计算分数
+        Map<String, Integer> scores = room.getScores();
+
+        return new RoomDetail(room, findMembers(room), scores);
+    }
 
-        // 获取成员信息，同时清理不存在的用户
+    /**
+     * 房间成员的用户信息，跳过已不存在的用户
+     */
+    private List<User> findMembers(Room room) {
         List<User> members = new ArrayList<>();
-        List<String> memberIdsToRemove = new ArrayList<>();
-        boolean needUpdate = false;
-        
         for (String memberId : room.getMemberIds()) {
             User user = storage.getUser(memberId);
             if (user != null) {
                 members.add(user);
-            } else {
-                // 用户不存在，标记为需要移除
-                memberIdsToRemove.add(memberId);
-                needUpdate = true;
             }
         }
-        
-        // 从房间中移除不存在的用户
-        if (needUpdate) {
-            for (String memberIdToRemove : memberIdsToRemove) {
-                room.getMemberIds().remove(memberIdToRemove);
-            }
-            storage.updateRoom(room);
+        return members;
+    }
+
+    /**
+     * 增量获取房间详情：since为客户端已有的房间版本号，offset为客户端已有的转账记录数，至少提供一个
+     * 只返回之后新增的转账记录，成员列表有变化时才返回成员，分数始终返回
+     */
+    public RoomDelta<Transaction> getRoomDetailSince(String roomId, Long since, Integer offset) throws Exception {
+        Room room = storage.getRoom(roomId);
+        if (room == null) {
+            throw new Exception("房间不存在");
         }
-        
-        detail.put("members", members);
 
-        // 计算分数
-        Map<String, Integer> scores = room.calculateScores();
-        detail.put("scores", scores);
+        RoomDelta<Transaction> delta = transactionsSince(room, since, offset);
+        // 只给了offset时无法判断成员是否变化，返回完整成员列表
+        if (since == null || since > room.getVersion() || room.getMembersVersion() > since) {
+            delta.setMemberIds(room.getMemberIds());
+            delta.setMembers(findMembers(room));
+        }
+        delta.setScores(room.getScores());
+        return delta;
+    }
+
+    /**
+     * 计算增量同步的起始位置并截取新增的转账记录
+     * 客户端的版本号或位置超出服务端（如服务端数据被重置）时从头返回，客户端按offset整体替换
+     */
+    private RoomDelta<Transaction> transactionsSince(Room room, Long since, Integer offset) throws Exception {
+        if (since == null && offset == null) {
+            throw new Exception("缺少同步位置");
+        }
+        if ((since != null && since < 0) || (offset != null && offset < 0)) {
+            throw new Exception("无效的同步位置");
+        }
+
+        List<Transaction> transactions = room.getTransactions();
+        int size = transactions.size();
+        int start;
+        if (offset != null) {
+            start = offset <= size ? offset : 0;
+        } else {
+            start = since <= room.getVersion() ? room.getTransactionOffsetAfter(since) : 0;
+        }
+        return new RoomDelta<>(room.getId(), room.getVersion(), start, size,
+                new ArrayList<>(transactions.subList(start, size)));
+    }
+
+    /**
+     * 订阅房间变更事件
+     */
+    public void subscribeRoom(String roomId, RoomEventBus.Subscriber subscriber) throws Exception {
+        if (storage.getRoom(roomId) == null) {
+            throw new Exception("房间不存在");
+        }
+        eventBus.subscribe(roomId, subscriber);
+    }
 
-        return detail;
+    /**
+     * 取消订阅房间变更事件
+     */
+    public void unsubscribeRoom(String roomId, RoomEventBus.Subscriber subscriber) {
+        eventBus.unsubscribe(roomId, subscriber);
     }
 
     // ============= Transaction Services =============
@@ -213,35 +340,108 @@ public class CardScoreService {
             throw new Exception("房间不存在");
         }
 
-        // 验证用户存在且都在房间中
-        if (!room.getMemberIds().contains(fromUserId)) {
-            throw new Exception("转账用户不在房间中");
-        }
-        if (!room.getMemberIds().contains(toUserId)) {
-            throw new Exception("收款用户不在房间中");
+        // 成员校验和写入在房间锁内完成，避免校验后成员已离开
+        Transaction transaction;
+        long sequence;
+        Lock lock = storage.getRoomLock(roomId);
+        lock.lock();
+        try {
+            // 在锁内读取最新快照
+            room = storage.getRoom(roomId);
+            if (room == null) {
+                throw new Exception("房间不存在");
+            }
+
+            // 验证用户存在且都在房间中
+            if (!room.getMemberIds().contains(fromUserId)) {
+                throw new Exception("转账用户不在房间中");
+            }
+            if (!room.getMemberIds().contains(toUserId)) {
+                throw new Exception("收款用户不在房间中");
+            }
+
+            // 验证转账金额
+            if (amount <= 0) {
+                throw new Exception("转账金额必须大于0");
+            }
+
+            // 创建转账记录
+            String transactionId = UUID.randomUUID().toString();
+            transaction = new Transaction(
+                transactionId,
+                roomId,
+                fromUserId,
+                toUserId,
+                amount,
+                System.currentTimeMillis()
+            );
+
+            // 添加到房间
+            sequence = storage.addTransaction(transaction);
+            eventBus.publish(RoomEvent.transaction(storage.getRoom(roomId), transaction));
+        } finally {
+            lock.unlock();
         }
+        // 释放房间锁后再等待日志持久化，同一房间的后续写入不必排在这次fsync之后
+        storage.awaitDurable(sequence);
+        eventBus.flush(roomId);
+        return transaction;
+    }
 
-        // 验证转账金额
-        if (amount <= 0) {
-            throw new Exception("转账金额必须大于0");
+    /**
+     * 批量创建同一房间的转账记录（如一局结束时的结算）
+     * 全部校验通过后原子地写入，房间版本号只递增一次，只持久化一次；任何一笔不合法则全部不写入
+     */
+    public List<Transaction> createTransactions(String roomId, List<CreateTransactionRequest> requests) throws Exception {
+        if (requests == null || requests.isEmpty()) {
+            throw new Exception("转账记录不能为空");
+        }
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new Exception("单次最多提交" + MAX_BATCH_SIZE + "笔转账");
+        }
+        if (roomId == null) {
+            throw new Exception("房间不存在");
         }
 
-        // 创建转账记录
-        String transactionId = UUID.randomUUID().toString();
-        Transaction transaction = new Transaction(
-            transactionId,
-            roomId,
-            fromUserId,
-            toUserId,
-            amount,
-            System.currentTimeMillis()
-        );
+        List<Transaction> transactions;
+        long sequence;
+        Lock lock = storage.getRoomLock(roomId);
+        lock.lock();
+        try {
+            Room room = storage.getRoom(roomId);
+            if (room == null) {
+                throw new Exception("房间不存在");
+            }
 
-        // 添加到房间
-        room.addTransaction(transaction);
-        storage.updateRoom(room);
+            // 成员列表只转换一次，每笔转账O(1)校验
+            Set<String> members = new HashSet<>(room.getMemberIds());
+            long now = System.currentTimeMillis();
+            transactions = new ArrayList<>(requests.size());
+            for (CreateTransactionRequest request : requests) {
+                if (request.getRoomId() != null && !request.getRoomId().equals(roomId)) {
+                    throw new Exception("批量转账必须属于同一房间");
+                }
+                if (!members.contains(request.getFromUserId())) {
+                    throw new Exception("转账用户不在房间中");
+                }
+                if (!members.contains(request.getToUserId())) {
+                    throw new Exception("收款用户不在房间中");
+                }
+                if (request.getAmount() <= 0) {
+                    throw new Exception("转账金额必须大于0");
+                }
+                transactions.add(new Transaction(UUID.randomUUID().toString(), roomId,
+                        request.getFromUserId(), request.getToUserId(), request.getAmount(), now));
+            }
 
-        return transaction;
+            sequence = storage.addTransactions(roomId, transactions);
+            eventBus.publish(RoomEvent.transactions(storage.getRoom(roomId), transactions));
+        } finally {
+            lock.unlock();
+        }
+        storage.awaitDurable(sequence);
+        eventBus.flush(roomId);
+        return transactions;
     }
 
     /**
@@ -255,27 +455,78 @@ public class CardScoreService {
         return room.getTransactions();
     }
 
+    /**
+     * 增量获取房间的转账记录（since为已有的房间版本号，offset为已有的记录数）
+     */
+    public RoomDelta<Transaction> getRoomTransactionsSince(String roomId, Long since, Integer offset) throws Exception {
+        Room room = storage.getRoom(roomId);
+        if (room == null) {
+            throw new Exception("房间不存在");
+        }
+        return transactionsSince(room, since, offset);
+    }
+
+    /**
+     * 按时间顺序分页获取房间的转账记录（转账记录只追加，游标即位置）
+     */
+    public Page<Transaction> getRoomTransactionsPage(String roomId, String after, int limit) throws Exception {
+        Room room = storage.getRoom(roomId);
+        if (room == null) {
+            throw new Exception("房间不存在");
+        }
+
+        List<Transaction> transactions = room.getTransactions();
+        int size = transactions.size();
+        int start;
+        try {
+            String position = Page.decodeCursor(after);
+            start = position == null ? 0 : Integer.parseInt(position);
+        } catch (IllegalArgumentException e) {
+            throw new Exception("无效的分页游标");
+        }
+        if (start < 0 || start > size) {
+            throw new Exception("无效的分页游标");
+        }
+
+        int end = Math.min(start + Page.clampLimit(limit), size);
+        List<Transaction> items = new ArrayList<>(transactions.subList(start, end));
+        return new Page<>(items, end < size ? Page.encodeCursor(String.valueOf(end)) : null);
+    }
+
     /**
      * 获取转账详情（包含用户名）
      */
-    public List<Map<String, Object>> getTransactionDetails(String roomId) throws Exception {
+    public List<TransactionDetail> getTransactionDetails(String roomId) throws Exception {
         Room room = storage.getRoom(roomId);
         if (room == null) {
             throw new Exception("房间不存在");
         }
 
-        List<Map<String, Object>> details = new ArrayList<>();
-        for (Transaction transaction : room.getTransactions()) {
-            Map<String, Object> detail = new HashMap<>();
-            detail.put("transaction", transaction);
+        return toDetails(room.getTransactions());
+    }
 
+    /**
+     * 增量获取转账详情（since为已有的房间版本号，offset为已有的记录数）
+     */
+    public RoomDelta<TransactionDetail> getTransactionDetailsSince(String roomId, Long since, Integer offset) throws Exception {
+        Room room = storage.getRoom(roomId);
+        if (room == null) {
+            throw new Exception("房间不存在");
+        }
+        RoomDelta<Transaction> delta = transactionsSince(room, since, offset);
+        return new RoomDelta<>(delta.getRoomId(), delta.getVersion(), delta.getOffset(),
+                delta.getTransactionCount(), toDetails(delta.getTransactions()));
+    }
+
+    private List<TransactionDetail> toDetails(List<Transaction> transactions) {
+        List<TransactionDetail> details = new ArrayList<>();
+        for (Transaction transaction : transactions) {
             User fromUser = storage.getUser(transaction.getFromUserId());
             User toUser = storage.getUser(transaction.getToUserId());
             
-            detail.put("fromUserName", fromUser != null ? fromUser.getName() : "Unknown");
-            detail.put("toUserName", toUser != null ? toUser.getName() : "Unknown");
-            
-            details.add(detail);
+            details.add(new TransactionDetail(transaction,
+                    fromUser != null ? fromUser.getName() : "Unknown",
+                    toUser != null ? toUser.getName() : "Unknown"));
         }
 
         return details;
@@ -0,0 +1,112 @@
+package com.cardscore.service;
+
+import com.cardscore.metrics.MetricsRegistry;
+import com.cardscore.model.Room;
+import com.cardscore.model.RoomEvent;
+import com.cardscore.storage.LocalStorage;
+import com.cardscore.storage.RoomFileStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 房间成员后台修复
+ * 读取接口不修改数据；房间中指向已删除用户的成员ID由后台线程定期清理，
+ * 启动时和删除用户后各立即执行一次，一轮发现的所有修改合并为一次持久化
+ */
+public class MembershipReconciler {
+    private static final LongAdder removedMembers = MetricsRegistry.getDefault().counter(
+            "cardscore_reconcile_removed_members_total", "Dangling room members removed by reconciliation");
+
+    private final LocalStorage storage;
+    private final RoomEventBus eventBus;
+    private final AtomicBoolean runQueued = new AtomicBoolean(false);
+    private final ScheduledExecutorService executor;
+
+    public MembershipReconciler(LocalStorage storage, RoomEventBus eventBus, long intervalMs) {
+        this.storage = storage;
+        this.eventBus = eventBus;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "membership-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runSafely, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 安排一次立即执行（已安排则不重复）
+     */
+    public void trigger() {
+        if (runQueued.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::runSafely);
+            } catch (RejectedExecutionException e) {
+                runQueued.set(false);
+            }
+        }
+    }
+
+    private void runSafely() {
+        runQueued.set(false);
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            System.err.println("Membership reconciliation failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 扫描所有房间的摘要（不加载房间），移除不存在的成员并通知订阅者，返回移除的成员数
+     */
+    public synchronized int reconcile() {
+        Map<String, List<String>> missing = new HashMap<>();
+        for (RoomFileStore.IndexEntry summary : storage.getRoomSummaries()) {
+            for (String memberId : summary.getMemberIds()) {
+                if (storage.getUser(memberId) == null) {
+                    missing.computeIfAbsent(summary.getId(), id -> new ArrayList<>()).add(memberId);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        int removed = storage.removeMissingMembers(missing);
+        if (removed > 0) {
+            removedMembers.add(removed);
+            System.out.println("Removed " + removed + " dangling members from " + missing.size() + " rooms");
+            for (Map.Entry<String, List<String>> entry : missing.entrySet()) {
+                Room room = storage.getRoom(entry.getKey());
+                if (room == null) {
+                    continue;
+                }
+                for (String userId : entry.getValue()) {
+                    eventBus.publish(RoomEvent.leave(room, userId));
+                }
+                eventBus.flush(room.getId());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 停止后台修复
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
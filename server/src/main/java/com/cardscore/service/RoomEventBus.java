@@ -0,0 +1,168 @@
+package com.cardscore.service;
+
+import com.cardscore.model.RoomEvent;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 房间变更事件总线
+ * 写请求在房间锁内publish，只按版本号顺序放入房间的待发送队列；释放锁并等待日志持久化后flush，
+ * 每个事件只编码一次，同一份数据交给房间的每个订阅者，订阅者只放入自己的发送队列（非阻塞），
+ * 一个慢连接不会拖慢写请求或其他连接
+ */
+public class RoomEventBus {
+    private static final long HEARTBEAT_SECONDS = 15;
+
+    /**
+     * 房间事件订阅者
+     */
+    public interface Subscriber {
+        /**
+         * 推送编码后的事件（多个订阅者共用同一个数组，不能修改；在发布线程中调用，不能阻塞），
+         * 返回false表示连接已失效，将被移除
+         */
+        boolean onEvent(byte[] frame);
+
+        /**
+         * 发送心跳，返回false表示连接已失效，将被移除
+         */
+        boolean onHeartbeat();
+
+        /**
+         * 订阅被移除时调用
+         */
+        void close();
+    }
+
+    /**
+     * 房间待发送的事件，同一时间只有一个线程推送
+     */
+    private static final class Outbox {
+        private final Queue<RoomEvent> events = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushing = new AtomicBoolean(false);
+    }
+
+    private final Function<RoomEvent, byte[]> encoder;
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat;
+
+    /**
+     * @param encoder 把事件编码为推送给客户端的数据
+     */
+    public RoomEventBus(Function<RoomEvent, byte[]> encoder) {
+        this.encoder = encoder;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "room-events-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeats,
+                HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 订阅房间事件
+     */
+    public void subscribe(String roomId, Subscriber subscriber) {
+        subscribers.computeIfAbsent(roomId, id -> new CopyOnWriteArraySet<>()).add(subscriber);
+    }
+
+    /**
+     * 取消订阅
+     */
+    public void unsubscribe(String roomId, Subscriber subscriber) {
+        subscribers.computeIfPresent(roomId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * 获取房间当前订阅者数量
+     */
+    public int getSubscriberCount(String roomId) {
+        Set<Subscriber> set = subscribers.get(roomId);
+        return set != null ? set.size() : 0;
+    }
+
+    /**
+     * 发布房间事件：在房间锁内调用，放入房间的待发送队列（保证版本号顺序），不编码也不推送
+     * 由flush推送；变更的日志持久化失败时不会flush，事件随该房间下一次flush推送（与内存中的数据一致）
+     */
+    public void publish(RoomEvent event) {
+        if (!subscribers.containsKey(event.getRoomId())) {
+            return;
+        }
+        outboxes.computeIfAbsent(event.getRoomId(), id -> new Outbox()).events.add(event);
+    }
+
+    /**
+     * 推送房间待发送的事件：在释放房间锁并等待日志持久化之后调用
+     * 其他线程正在推送时由它继续推送，本线程直接返回
+     */
+    public void flush(String roomId) {
+        Outbox outbox = outboxes.get(roomId);
+        if (outbox == null) {
+            return;
+        }
+        while (!outbox.events.isEmpty() && outbox.flushing.compareAndSet(false, true)) {
+            try {
+                RoomEvent event;
+                while ((event = outbox.events.poll()) != null) {
+                    deliver(event);
+                }
+            } finally {
+                outbox.flushing.set(false);
+            }
+        }
+        if (!subscribers.containsKey(roomId)) {
+            outboxes.remove(roomId, outbox);
+        }
+    }
+
+    private void deliver(RoomEvent event) {
+        Set<Subscriber> set = subscribers.get(event.getRoomId());
+        if (set == null) {
+            return;
+        }
+        byte[] frame = encoder.apply(event);
+        for (Subscriber subscriber : set) {
+            if (!subscriber.onEvent(frame)) {
+                remove(event.getRoomId(), subscriber);
+            }
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Map.Entry<String, Set<Subscriber>> entry : subscribers.entrySet()) {
+            for (Subscriber subscriber : entry.getValue()) {
+                if (!subscriber.onHeartbeat()) {
+                    remove(entry.getKey(), subscriber);
+                }
+            }
+        }
+    }
+
+    private void remove(String roomId, Subscriber subscriber) {
+        unsubscribe(roomId, subscriber);
+        subscriber.close();
+    }
+
+    /**
+     * 关闭事件总线
+     */
+    public void shutdown() {
+        heartbeat.shutdownNow();
+    }
+}
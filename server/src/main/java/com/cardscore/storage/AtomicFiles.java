@@ -0,0 +1,101 @@
+package com.cardscore.storage;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 崩溃安全的文件写入：先写临时文件并fsync，再原子地重命名覆盖目标文件
+ * 任何时刻目标文件要么是旧内容，要么是完整的新内容，不会出现写了一半的文件
+ */
+public final class AtomicFiles {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 写入文本内容的回调
+     */
+    public interface WriteAction {
+        void write(Writer writer) throws IOException;
+    }
+
+    /**
+     * 写入二进制内容的回调
+     */
+    public interface StreamAction {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * 以UTF-8写入文件，返回写入的字节数
+     */
+    public static long write(File target, WriteAction action) throws IOException {
+        return writeBytes(target, out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            action.write(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * 写入二进制文件，返回写入的字节数
+     */
+    public static long writeBytes(File target, StreamAction action) throws IOException {
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+        long bytes;
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+            action.write(buffered);
+            buffered.flush();
+            out.getChannel().force(true);
+            bytes = out.getChannel().size();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+        return bytes;
+    }
+
+    /**
+     * fsync目录使重命名本身持久化（部分平台不支持打开目录，忽略即可）
+     */
+    private static void syncDirectory(File dir) {
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 不支持时依赖文件系统自身的元数据写入顺序
+        }
+    }
+
+    /**
+     * 删除上次崩溃时遗留的临时文件
+     */
+    public static void deleteTempFiles(File dir) {
+        File[] temps = dir.listFiles((d, name) -> name.endsWith(TEMP_SUFFIX));
+        if (temps == null) {
+            return;
+        }
+        for (File temp : temps) {
+            if (!temp.delete()) {
+                System.err.println("Failed to delete temp file: " + temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package com.cardscore.storage;
+
+import com.cardscore.model.Room;
+import com.cardscore.model.Transaction;
+import com.cardscore.model.TransactionList;
+import com.cardscore.model.User;
+import com.cardscore.model.Uuids;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 紧凑的二进制格式
+ * 文件头为4字节魔数（CSBR房间 / CSBU用户）和1字节格式版本，之后是若干条记录：varint长度 + 1字节类型 + 内容，
+ * 读取时跳过不认识的记录类型。房间文件中的用户ID存入文件内的字典，转账记录只保存字典下标；
+ * UUID按16字节保存，金额为zigzag varint，时间戳保存与上一条转账的差值。较大的文件通过内存映射读取
+ */
+public class BinaryStorageCodec implements StorageCodec {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte[] ROOM_MAGIC = {'C', 'S', 'B', 'R'};
+    private static final byte[] USERS_MAGIC = {'C', 'S', 'B', 'U'};
+    private static final int MMAP_THRESHOLD = 256 * 1024;
+    private static final int TRANSACTIONS_PER_RECORD = 4096;
+
+    // 记录类型
+    private static final int RECORD_ROOM = 1;
+    private static final int RECORD_DICTIONARY = 2;
+    private static final int RECORD_MEMBERS = 3;
+    private static final int RECORD_TRANSACTIONS = 4;
+    private static final int RECORD_USER = 5;
+
+    // ID的编码方式
+    private static final int ID_NULL = 0;
+    private static final int ID_UUID = 1;
+    private static final int ID_STRING = 2;
+
+    @Override
+    public String getSuffix() {
+        return ".bin";
+    }
+
+    // ============= Room =============
+
+    @Override
+    public void writeRoom(Room room, OutputStream out) throws IOException {
+        out.write(ROOM_MAGIC);
+        out.write(FORMAT_VERSION);
+
+        Output record = new Output(256);
+        record.writeByte(RECORD_ROOM);
+        record.writeId(room.getId());
+        record.writeString(room.getName());
+        record.writeVarLong(room.getCreatedAt());
+        record.writeVarLong(room.getVersion());
+        record.writeVarLong(room.getMembersVersion());
+        record.writeRecordTo(out);
+
+        // 成员和转账双方的用户ID字典，成员在前
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        TransactionList transactions = room.getTransactions();
+        for (String memberId : room.getMemberIds()) {
+            index(dictionary, ids, memberId);
+        }
+        for (int i = 0; i < transactions.size(); i++) {
+            index(dictionary, ids, transactions.getFromUserId(i));
+            index(dictionary, ids, transactions.getToUserId(i));
+        }
+        record.writeByte(RECORD_DICTIONARY);
+        record.writeVarLong(ids.size());
+        for (String id : ids) {
+            record.writeId(id);
+        }
+        record.writeRecordTo(out);
+
+        record.writeByte(RECORD_MEMBERS);
+        record.writeVarLong(room.getMemberIds().size());
+        for (String memberId : room.getMemberIds()) {
+            record.writeVarLong(dictionary.get(memberId));
+        }
+        record.writeRecordTo(out);
+
+        // 转账记录分块保存，每块内的时间戳从0开始差分
+        for (int start = 0; start < transactions.size(); start += TRANSACTIONS_PER_RECORD) {
+            int end = Math.min(start + TRANSACTIONS_PER_RECORD, transactions.size());
+            record.writeByte(RECORD_TRANSACTIONS);
+            record.writeVarLong(end - start);
+            long previous = 0;
+            for (int i = start; i < end; i++) {
+                record.writeId(transactions.getId(i));
+                record.writeVarLong(dictionary.get(transactions.getFromUserId(i)));
+                record.writeVarLong(dictionary.get(transactions.getToUserId(i)));
+                record.writeZigZag(transactions.getAmount(i));
+                record.writeZigZag(transactions.getTimestamp(i) - previous);
+                previous = transactions.getTimestamp(i);
+            }
+            record.writeRecordTo(out);
+        }
+    }
+
+    private static void index(Map<String, Integer> dictionary, List<String> ids, String id) {
+        if (!dictionary.containsKey(id)) {
+            dictionary.put(id, ids.size());
+            ids.add(id);
+        }
+    }
+
+    @Override
+    public Room readRoom(File file) throws IOException {
+        ByteBuffer buffer = open(file, ROOM_MAGIC);
+        try {
+            String id = null;
+            String name = null;
+            long createdAt = 0;
+            long version = 0;
+            long membersVersion = 0;
+            List<String> dictionary = new ArrayList<>();
+            List<String> memberIds = new ArrayList<>();
+            List<Transaction> transactions = new ArrayList<>();
+            while (buffer.hasRemaining()) {
+                Input record = Input.nextRecord(buffer);
+                switch (record.readByte()) {
+                    case RECORD_ROOM:
+                        id = record.readId();
+                        name = record.readString();
+                        createdAt = record.readVarLong();
+                        version = record.readVarLong();
+                        membersVersion = record.readVarLong();
+                        break;
+                    case RECORD_DICTIONARY: {
+                        int count = record.readCount();
+                        for (int i = 0; i < count; i++) {
+                            dictionary.add(record.readId());
+                        }
+                        break;
+                    }
+                    case RECORD_MEMBERS: {
+                        int count = record.readCount();
+                        for (int i = 0; i < count; i++) {
+                            memberIds.add(dictionary.get(record.readCount()));
+                        }
+                        break;
+                    }
+                    case RECORD_TRANSACTIONS: {
+                        int count = record.readCount();
+                        long timestamp = 0;
+                        for (int i = 0; i < count; i++) {
+                            String transactionId = record.readId();
+                            String fromUserId = dictionary.get(record.readCount());
+                            String toUserId = dictionary.get(record.readCount());
+                            int amount = (int) record.readZigZag();
+                            timestamp += record.readZigZag();
+                            transactions.add(new Transaction(transactionId, id, fromUserId, toUserId, amount, timestamp));
+                        }
+                        break;
+                    }
+                    default:
+                        // 新版本增加的记录类型，跳过
+                }
+            }
+            if (id == null) {
+                throw new IOException("Missing room record");
+            }
+            return new Room(id, name, createdAt, version, membersVersion, memberIds, transactions);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt binary file " + file.getName() + ": " + e, e);
+        }
+    }
+
+    // ============= Users =============
+
+    @Override
+    public void writeUsers(Collection<User> users, OutputStream out) throws IOException {
+        out.write(USERS_MAGIC);
+        out.write(FORMAT_VERSION);
+        Output record = new Output(128);
+        for (User user : users) {
+            record.writeByte(RECORD_USER);
+            record.writeId(user.getId());
+            record.writeString(user.getName());
+            record.writeVarLong(user.getCreatedAt());
+            record.writeId(user.getCurrentRoomId());
+            record.writeRecordTo(out);
+        }
+    }
+
+    @Override
+    public List<User> readUsers(File file) throws IOException {
+        ByteBuffer buffer = open(file, USERS_MAGIC);
+        try {
+            List<User> users = new ArrayList<>();
+            while (buffer.hasRemaining()) {
+                Input record = Input.nextRecord(buffer);
+                if (record.readByte() != RECORD_USER) {
+                    continue;
+                }
+                User user = new User(record.readId(), record.readString(), record.readVarLong());
+                user.setCurrentRoomId(record.readId());
+                users.add(user);
+            }
+            return users;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt binary file " + file.getName() + ": " + e, e);
+        }
+    }
+
+    // ============= File access =============
+
+    /**
+     * 读取文件并校验文件头，返回位于第一条记录处的缓冲区（大文件使用内存映射）
+     */
+    private static ByteBuffer open(File file, byte[] magic) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MMAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // 读满为止
+                }
+                buffer.flip();
+            }
+        }
+
+        byte[] header = new byte[magic.length];
+        if (buffer.remaining() < magic.length + 1) {
+            throw new IOException("Not a binary storage file: " + file.getName());
+        }
+        buffer.get(header);
+        if (!Arrays.equals(header, magic)) {
+            throw new IOException("Not a binary storage file: " + file.getName());
+        }
+        int version = buffer.get() & 0xFF;
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported binary format version " + version + ": " + file.getName());
+        }
+        return buffer;
+    }
+
+    /**
+     * 记录内容的写入缓冲区，写出时加上长度前缀
+     */
+    static final class Output {
+        private byte[] bytes;
+        private int size;
+
+        Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * 字符串：varint(UTF-8字节数+1) + 内容，0表示null
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void writeId(String id) {
+            if (id == null) {
+                writeByte(ID_NULL);
+            } else if (Uuids.isCanonical(id)) {
+                UUID uuid = UUID.fromString(id);
+                writeByte(ID_UUID);
+                writeLong(uuid.getMostSignificantBits());
+                writeLong(uuid.getLeastSignificantBits());
+            } else {
+                writeByte(ID_STRING);
+                writeString(id);
+            }
+        }
+
+        /**
+         * 写出 varint长度 + 内容，并清空缓冲区以便写下一条记录
+         */
+        void writeRecordTo(OutputStream out) throws IOException {
+            int length = size;
+            long value = length;
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+            out.write(bytes, 0, length);
+            size = 0;
+        }
+    }
+
+    /**
+     * 单条记录的读取
+     */
+    static final class Input {
+        private final ByteBuffer buffer;
+
+        private Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * 读取下一条记录，并把文件缓冲区移动到记录之后
+         */
+        static Input nextRecord(ByteBuffer file) {
+            int length = (int) readVarLong(file);
+            if (length < 0 || length > file.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            ByteBuffer record = file.slice(file.position(), length);
+            file.position(file.position() + length);
+            return new Input(record);
+        }
+
+        int readByte() {
+            return buffer.get() & 0xFF;
+        }
+
+        long readVarLong() {
+            return readVarLong(buffer);
+        }
+
+        private static long readVarLong(ByteBuffer buffer) {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        /**
+         * 读取数量或下标（非负int）
+         */
+        int readCount() {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid count: " + value);
+            }
+            return (int) value;
+        }
+
+        long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            int size = (int) (length - 1);
+            byte[] utf8 = new byte[size];
+            buffer.get(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        String readId() {
+            switch (readByte()) {
+                case ID_NULL:
+                    return null;
+                case ID_UUID:
+                    return new UUID(buffer.getLong(), buffer.getLong()).toString();
+                case ID_STRING:
+                    return readString();
+                default:
+                    throw new IllegalArgumentException("Unknown id encoding");
+            }
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.cardscore.storage;
+
+import com.cardscore.json.JsonCodec;
+import com.cardscore.metrics.Histogram;
+import com.cardscore.metrics.MetricsRegistry;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 追加写事务日志
+ * 每次变更只追加一行JSON记录，启动时按顺序重放以重建内存数据；
+ * 按持久化级别决定写入后是否等待fsync，GROUP模式下多个请求共用一次fsync。
+ * 日志分段保存在目录中，段文件名为段内第一条记录的序号；写入快照前切换到新段，快照覆盖的旧段随后删除
+ */
+public class Journal {
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Histogram appendTimer = LocalStorage.timer("journal_append");
+    private static final Histogram syncTimer = LocalStorage.timer("journal_fsync");
+    private static final Histogram commitRecords = MetricsRegistry.getDefault().histogram(
+            "cardscore_journal_commit_records", "Journal records made durable per fsync", 1);
+
+    private final File dir;
+    private final Gson gson;
+    private final StorageConfig.Durability durability;
+    private final long commitWindowNanos;
+    private FileChannel channel;  // 当前段，为null时下一次追加创建新段
+    private long written;  // 最后一条已写入记录的序号（序号从1开始，跨段连续）
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private long settled;  // fsync已结束（成功或失败）的记录序号
+    private final NavigableMap<Long, SyncFailure> failures = new TreeMap<>();  // fsync失败的序号区间，按区间末尾排序
+    private boolean syncing;
+
+    public Journal(File dir) {
+        this(dir, StorageConfig.Durability.ASYNC, 0);
+    }
+
+    public Journal(File dir, StorageConfig.Durability durability, long commitWindowMs) {
+        this.dir = dir;
+        this.gson = JsonCodec.create();
+        this.durability = durability;
+        this.commitWindowNanos = TimeUnit.MILLISECONDS.toNanos(commitWindowMs);
+        if (!dir.exists() && !dir.mkdirs()) {
+            System.err.println("Failed to create journal directory: " + dir);
+        }
+    }
+
+    /**
+     * fsync失败的记录序号区间 (from, 区间末尾]
+     */
+    private static class SyncFailure {
+        final long from;
+        final IOException cause;
+
+        SyncFailure(long from, IOException cause) {
+            this.from = from;
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * 日志段
+     */
+    private static class Segment {
+        final long start;  // 段内第一条记录的序号
+        final File file;
+
+        Segment(long start, File file) {
+            this.start = start;
+            this.file = file;
+        }
+    }
+
+    private List<Segment> segments() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        List<Segment> segments = new ArrayList<>();
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                segments.add(new Segment(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring unknown journal file: " + file);
+            }
+        }
+        segments.sort(Comparator.comparingLong(s -> s.start));
+        return segments;
+    }
+
+    /**
+     * 按顺序重放序号大于after（快照已覆盖的序号）的记录，返回重放的记录数
+     * 之后追加的记录接着最后一个序号编号
+     */
+    public synchronized int replay(long after, Consumer<JournalEntry> handler) {
+        List<Segment> segments = segments();
+        long last = after;
+        int count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            // 下一段的起始序号不超过after+1时，这一段已全部包含在快照中
+            if (i + 1 < segments.size() && segments.get(i + 1).start <= after + 1) {
+                continue;
+            }
+            long[] sequence = {segment.start - 1};
+            int[] applied = {0};
+            readFile(gson, segment.file, entry -> {
+                sequence[0]++;
+                if (sequence[0] > after) {
+                    handler.accept(entry);
+                    applied[0]++;
+                }
+            });
+            count += applied[0];
+            last = Math.max(last, sequence[0]);
+        }
+        written = last;
+        syncLock.lock();
+        try {
+            settled = last;
+        } finally {
+            syncLock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * 重放单个日志文件（如旧版本的 journal.log），返回记录数
+     */
+    public static int replayFile(File file, Consumer<JournalEntry> handler) {
+        return readFile(JsonCodec.create(), file, handler);
+    }
+
+    /**
+     * 读取日志文件中的记录，遇到不完整的记录（如写入时崩溃）则停止
+     */
+    private static int readFile(Gson gson, File file, Consumer<JournalEntry> handler) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                JournalEntry entry;
+                try {
+                    entry = gson.fromJson(line, JournalEntry.class);
+                } catch (JsonParseException | NumberFormatException e) {
+                    System.err.println("Journal " + file.getName() + " truncated at record " + count
+                            + ": " + e.getMessage());
+                    break;
+                }
+                if (entry != null && entry.getType() != null) {
+                    handler.accept(entry);
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to replay journal " + file.getName() + ": " + e.getMessage());
+        }
+        return count;
+    }
+
+    /**
+     * 最后一条已写入记录的序号
+     */
+    public synchronized long getLastSequence() {
+        return written;
+    }
+
+    /**
+     * 追加一条记录，返回记录的序号（用于awaitDurable）
+     */
+    public long append(JournalEntry entry) {
+        return appendAll(List.of(entry));
+    }
+
+    /**
+     * 追加多条记录，一次写入，返回最后一条记录的序号
+     * 写入操作系统缓冲区后返回；SYNC模式下fsync后才返回。
+     * 写入失败时截断写了一半的内容并抛出UncheckedIOException，调用方不应再应用这些记录
+     */
+    public synchronized long appendAll(List<JournalEntry> entries) {
+        long start = System.nanoTime();
+        StringBuilder batch = new StringBuilder();
+        for (JournalEntry entry : entries) {
+            batch.append(JsonCodec.toJson(gson, entry)).append('\n');
+        }
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(batch));
+
+        long offset = -1;
+        try {
+            if (channel == null) {
+                // 新段从下一条记录的序号开始
+                File segment = new File(dir, String.format("%020d", written + 1) + SEGMENT_SUFFIX);
+                // 同名段只可能是崩溃时（或写入失败后）连第一条记录都没写完的段，重放时没有读出任何记录
+                if (segment.exists() && !segment.delete()) {
+                    System.err.println("Failed to delete incomplete journal segment: " + segment);
+                }
+                channel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            }
+            offset = channel.size();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            if (durability == StorageConfig.Durability.SYNC) {
+                force(channel, entries.size());
+            }
+        } catch (IOException e) {
+            discardFailedWrite(offset);
+            throw new UncheckedIOException("Failed to append journal: " + e.getMessage(), e);
+        }
+        written += entries.size();
+        appendTimer.record(System.nanoTime() - start);
+        return written;
+    }
+
+    /**
+     * 追加失败后截断到写入前的位置，段内不留下写了一半的记录（否则重放读到它就会停止，丢掉之后的所有记录）
+     * 无法截断时放弃当前段，之后的记录写入新段
+     */
+    private void discardFailedWrite(long offset) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (offset >= 0) {
+                channel.truncate(offset);
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to truncate journal segment, starting a new one: " + e.getMessage());
+        }
+        close();
+    }
+
+    /**
+     * 等待序号及之前的记录fsync到磁盘（只在GROUP模式下等待），fsync失败时抛出UncheckedIOException
+     * 第一个等待者成为提交者：等待一个提交窗口让其他线程的写入加入，然后一次fsync覆盖窗口内的所有记录；
+     * 其他线程等待这次fsync完成。调用方在释放房间锁后才等待，同一房间和不同房间的写入都可以共用一次fsync
+     */
+    public void awaitDurable(long sequence) {
+        if (durability != StorageConfig.Durability.GROUP) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            while (settled < sequence) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long previous = settled;
+                syncLock.unlock();
+                try {
+                    groupCommit(previous);
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+            }
+            for (Map.Entry<Long, SyncFailure> failure : failures.tailMap(sequence, true).entrySet()) {
+                if (failure.getValue().from < sequence) {
+                    IOException cause = failure.getValue().cause;
+                    throw new UncheckedIOException("Failed to sync journal: " + cause.getMessage(), cause);
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 一次fsync覆盖当前段中已写入的所有记录
+     * fsync失败时记录失败的区间并放弃当前段（页缓存中的数据已不可信），之后的记录写入新段
+     */
+    private void groupCommit(long previous) {
+        if (commitWindowNanos > 0) {
+            LockSupport.parkNanos(commitWindowNanos);
+        }
+        FileChannel target;
+        long sequence;
+        synchronized (this) {
+            target = channel;
+            sequence = written;
+        }
+        if (target == null) {
+            // 没有正在写入的段：之前的段关闭时已经fsync（失败时由close记录）
+            settle(sequence, null);
+            return;
+        }
+        try {
+            force(target, sequence - previous);
+            settle(sequence, null);
+        } catch (ClosedChannelException e) {
+            // 段已切换或日志已关闭，由close记录结果
+        } catch (IOException e) {
+            System.err.println("Failed to sync journal: " + e.getMessage());
+            synchronized (this) {
+                if (channel == target) {
+                    closeQuietly(channel);
+                    channel = null;
+                }
+            }
+            settle(sequence, e);
+        }
+    }
+
+    /**
+     * 记录sequence及之前的记录fsync已结束，failure不为null时这些记录（之前未结束的部分）fsync失败
+     */
+    private void settle(long sequence, IOException failure) {
+        syncLock.lock();
+        try {
+            if (failure != null && sequence > settled) {
+                failures.put(sequence, new SyncFailure(settled, failure));
+            }
+            settled = Math.max(settled, sequence);
+            synced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private static void closeQuietly(FileChannel target) {
+        try {
+            target.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close journal segment: " + e.getMessage());
+        }
+    }
+
+    private static void force(FileChannel target, long records) throws IOException {
+        long start = System.nanoTime();
+        target.force(false);
+        syncTimer.record(System.nanoTime() - start);
+        commitRecords.record(records);
+    }
+
+    /**
+     * 切换到新段：fsync并关闭当前段，之后的记录写入新段，返回切换前最后一条记录的序号
+     */
+    public synchronized long roll() {
+        close();
+        return written;
+    }
+
+    /**
+     * 删除所有记录都不超过sequence的段（快照已覆盖）
+     */
+    public synchronized int deleteSegmentsThrough(long sequence) {
+        List<Segment> segments = segments();
+        int deleted = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            // 最后一段可能是正在写入的段，只有下一段从sequence之后开始时才能确定这一段已全部覆盖
+            long nextStart = i + 1 < segments.size() ? segments.get(i + 1).start : (channel == null ? written + 1 : -1);
+            if (nextStart < 0 || nextStart > sequence + 1) {
+                continue;
+            }
+            if (segments.get(i).file.delete()) {
+                deleted++;
+            } else {
+                System.err.println("Failed to delete journal segment: " + segments.get(i).file);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * fsync并关闭当前段
+     */
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try (FileChannel closing = channel) {
+            closing.force(false);
+            settle(written, null);
+        } catch (IOException e) {
+            System.err.println("Failed to close journal: " + e.getMessage());
+            settle(written, e);
+        }
+        channel = null;
+    }
+}
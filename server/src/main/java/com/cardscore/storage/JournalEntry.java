@@ -0,0 +1,151 @@
+package com.cardscore.storage;
+
+import com.cardscore.model.Room;
+import com.cardscore.model.Transaction;
+import com.cardscore.model.User;
+
+import java.util.List;
+
+/**
+ * 事务日志记录，每条记录对应一次数据变更
+ */
+public class JournalEntry {
+    public static final String CREATE_USER = "CREATE_USER";
+    public static final String UPDATE_USER = "UPDATE_USER";
+    public static final String DELETE_USER = "DELETE_USER";
+    public static final String CREATE_ROOM = "CREATE_ROOM";
+    public static final String UPDATE_ROOM = "UPDATE_ROOM";
+    public static final String DELETE_ROOM = "DELETE_ROOM";
+    public static final String JOIN_ROOM = "JOIN_ROOM";
+    public static final String LEAVE_ROOM = "LEAVE_ROOM";
+    public static final String TRANSACTION = "TRANSACTION";
+    public static final String TRANSACTION_BATCH = "TRANSACTION_BATCH";
+
+    private String type;
+    private String roomId;
+    private String userId;
+    private User user;
+    private Room room;
+    private Transaction transaction;
+    private List<Transaction> transactions;
+    private long version;  // 应用后的房间版本号，0表示不涉及房间或旧版本的日志
+
+    public JournalEntry() {
+    }
+
+    private JournalEntry(String type) {
+        this.type = type;
+    }
+
+    public static JournalEntry createUser(User user) {
+        JournalEntry entry = new JournalEntry(CREATE_USER);
+        entry.user = user;
+        return entry;
+    }
+
+    public static JournalEntry updateUser(User user) {
+        JournalEntry entry = new JournalEntry(UPDATE_USER);
+        entry.user = user;
+        return entry;
+    }
+
+    public static JournalEntry deleteUser(String userId) {
+        JournalEntry entry = new JournalEntry(DELETE_USER);
+        entry.userId = userId;
+        return entry;
+    }
+
+    public static JournalEntry createRoom(Room room) {
+        JournalEntry entry = new JournalEntry(CREATE_ROOM);
+        entry.room = room;
+        return entry;
+    }
+
+    public static JournalEntry updateRoom(Room room) {
+        JournalEntry entry = new JournalEntry(UPDATE_ROOM);
+        entry.room = room;
+        return entry;
+    }
+
+    public static JournalEntry deleteRoom(String roomId) {
+        JournalEntry entry = new JournalEntry(DELETE_ROOM);
+        entry.roomId = roomId;
+        return entry;
+    }
+
+    public static JournalEntry joinRoom(String roomId, String userId) {
+        JournalEntry entry = new JournalEntry(JOIN_ROOM);
+        entry.roomId = roomId;
+        entry.userId = userId;
+        return entry;
+    }
+
+    public static JournalEntry leaveRoom(String roomId, String userId) {
+        JournalEntry entry = new JournalEntry(LEAVE_ROOM);
+        entry.roomId = roomId;
+        entry.userId = userId;
+        return entry;
+    }
+
+    public static JournalEntry transaction(Transaction transaction) {
+        JournalEntry entry = new JournalEntry(TRANSACTION);
+        entry.roomId = transaction.getRoomId();
+        entry.transaction = transaction;
+        return entry;
+    }
+
+    /**
+     * 同一房间的一批转账，作为一条记录原子地应用
+     */
+    public static JournalEntry transactionBatch(String roomId, List<Transaction> transactions) {
+        JournalEntry entry = new JournalEntry(TRANSACTION_BATCH);
+        entry.roomId = roomId;
+        entry.transactions = transactions;
+        return entry;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEntry{" +
+                "type='" + type + '\'' +
+                ", roomId='" + roomId + '\'' +
+                ", userId='" + userId + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,65 @@
+package com.cardscore.storage;
+
+import com.cardscore.model.Room;
+import com.cardscore.model.User;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JSON格式（与API使用相同的类型适配器）
+ */
+public class JsonStorageCodec implements StorageCodec {
+    private static final Type USER_LIST = new TypeToken<List<User>>(){}.getType();
+
+    private final Gson gson;
+
+    public JsonStorageCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public String getSuffix() {
+        return ".json";
+    }
+
+    @Override
+    public Room readRoom(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Room.class);
+        } catch (JsonParseException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void writeRoom(Room room, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        gson.toJson(room, writer);
+        writer.flush();
+    }
+
+    @Override
+    public List<User> readUsers(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            List<User> users = gson.fromJson(reader, USER_LIST);
+            return users != null ? users : new ArrayList<>();
+        } catch (JsonParseException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void writeUsers(Collection<User> users, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        gson.toJson(new ArrayList<>(users), writer);
+        writer.flush();
+    }
+}
@@ -1,41 +1,128 @@
 package com.cardscore.storage;
 
+import com.cardscore.json.JsonCodec;
+import com.cardscore.metrics.Histogram;
+import com.cardscore.metrics.MetricsRegistry;
+import com.cardscore.model.Page;
 import com.cardscore.model.Room;
+import com.cardscore.model.RoomSummary;
 import com.cardscore.model.Transaction;
 import com.cardscore.model.User;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * 本地文件存储管理器
  */
 public class LocalStorage {
-    private static final String DATA_DIR = "data";
-    private static final String USERS_FILE = "users.json";
+    public static final String SORT_RECENT = "recent";
+    public static final String SORT_MEMBERS = "members";
+    private static final int SEARCH_SCAN_RATIO = 8;  // 候选数超过房间数的1/8时按顺序遍历全部房间，不使用倒排表
+
+    private static final String USERS_FILE = "users";
     private static final String ROOMS_FILE = "rooms.json";
+    private static final String LEGACY_JOURNAL_FILE = "journal.log";
+    private static final String JOURNAL_DIR = "journal";
+    private static final String SNAPSHOT_FILE = "snapshot.json";
+    private static final int LOCK_STRIPES = 256;
+
+    private static final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private static final Histogram flushBytes = metrics.histogram(
+            "cardscore_storage_flush_bytes", "Bytes written per storage flush", 1);
 
     private final Gson gson;
+    private final StorageCodec codec;       // 用户文件和房间文件的格式
+    private final StorageCodec otherCodec;  // 另一种格式，用于读取切换格式前的文件
     private final Map<String, User> users;
-    private final Map<String, Room> rooms;
+    private final Map<String, User> usersByName;  // 用户名索引，与users保持同步
+    private final NavigableSet<String> userOrder;  // 按创建时间排序的用户键，用于分页
+    private final Map<String, RoomFileStore.IndexEntry> summaries;  // 所有房间的摘要，常驻内存
+    private final RoomCache rooms;  // 常驻内存的房间，按权重淘汰，未命中时从房间文件加载
+    private final RoomSearchIndex searchIndex;
+    private final NavigableSet<String> roomOrder;  // 按创建时间排序的房间键，用于分页
+    private final String dataDir;
+    private final Journal journal;
+    private final RoomFileStore roomStore;
+    private final WriteBehindFlusher flusher;
+    private final WriteBehindFlusher checkpointer;  // 日志模式下定期写入快照并删除旧日志段
+    private volatile long checkpointSequence;  // 本次快照覆盖到的日志序号
+    // 追加日志并应用到内存时持有读锁，切换日志段时持有写锁：快照覆盖的记录都已在内存中
+    private final ReentrantReadWriteLock checkpointGate = new ReentrantReadWriteLock();
+    private long recoveryMs;
+    private final StripedLocks roomLocks;  // 同一房间的变更串行，不同房间并行
+    private final StripedLocks userLocks;
+    private final StripedLocks userNameLocks;  // 同名用户的创建串行，与userLocks分开以免交叉加锁
 
     public LocalStorage() {
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this(StorageConfig.fromSystemProperties());
+    }
+
+    public LocalStorage(StorageConfig config) {
+        this.gson = JsonCodec.builder().setPrettyPrinting().create();
+        this.codec = StorageCodec.create(config.getFormat(), gson);
+        this.otherCodec = StorageCodec.create(config.getFormat() == StorageConfig.Format.BINARY
+                ? StorageConfig.Format.JSON : StorageConfig.Format.BINARY, gson);
         this.users = new ConcurrentHashMap<>();
-        this.rooms = new ConcurrentHashMap<>();
-        
+        this.usersByName = new ConcurrentHashMap<>();
+        this.userOrder = new ConcurrentSkipListSet<>();
+        this.summaries = new ConcurrentHashMap<>();
+        this.searchIndex = new RoomSearchIndex();
+        this.roomOrder = new ConcurrentSkipListSet<>();
+        this.dataDir = config.getDataDir();
+        this.journal = new Journal(new File(dataDir, JOURNAL_DIR),
+                config.getDurability(), config.getGroupCommitWindowMs());
+        this.roomLocks = new StripedLocks(LOCK_STRIPES);
+        this.userLocks = new StripedLocks(LOCK_STRIPES);
+        this.userNameLocks = new StripedLocks(LOCK_STRIPES);
+
         initDataDirectory();
-        loadData();
+        this.roomStore = new RoomFileStore(dataDir, gson, codec, otherCodec);
+        this.rooms = new RoomCache(roomStore::read, config.getRoomCacheMaxWeight());
+        Set<String> recoveredUsers = new HashSet<>();
+        Set<String> recoveredRooms = new HashSet<>();
+        loadData(config.isWriteBehind(), recoveredUsers, recoveredRooms);
+
+        // 延迟写入模式下由后台线程合并写入，不再写事务日志
+        this.flusher = config.isWriteBehind()
+                ? new WriteBehindFlusher(this::flushDirty, config.getFlushIntervalMs(), config.getFlushThreshold())
+                : null;
+        this.checkpointer = config.isWriteBehind()
+                ? null
+                : new WriteBehindFlusher(this::checkpoint, this::rollForCheckpoint,
+                        config.getSnapshotIntervalMs(), config.getSnapshotThreshold(), "storage-checkpoint");
+        if (checkpointer != null) {
+            // 重放的记录留到下一次快照写入
+            recoveredUsers.forEach(checkpointer::markUserDirty);
+            recoveredRooms.forEach(checkpointer::markRoomDirty);
+        }
     }
 
     /**
@@ -43,39 +130,496 @@ public class LocalStorage {
      */
     private void initDataDirectory() {
         try {
-            Path dataPath = Paths.get(DATA_DIR);
+            Path dataPath = Paths.get(dataDir);
             if (!Files.exists(dataPath)) {
                 Files.createDirectories(dataPath);
             }
+            AtomicFiles.deleteTempFiles(dataPath.toFile());
         } catch (IOException e) {
             System.err.println("Failed to create data directory: " + e.getMessage());
         }
     }
 
     /**
-     * 加载数据
+     * 加载数据：用户文件与房间文件并行加载（房间文件之间也并行），再重放快照之后的日志
      */
-    private void loadData() {
-        loadUsers();
+    private void loadData(boolean writeBehind, Set<String> recoveredUsers, Set<String> recoveredRooms) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> usersLoaded = CompletableFuture.runAsync(() -> {
+            long usersStart = System.nanoTime();
+            loadUsers();
+            timer("load_users").record(System.nanoTime() - usersStart);
+        });
         loadRooms();
+        timer("load_rooms").record(System.nanoTime() - start);
+        usersLoaded.join();
+
+        long replayStart = System.nanoTime();
+        int replayed = replayJournal(writeBehind, recoveredUsers, recoveredRooms);
+        long end = System.nanoTime();
+        timer("replay_journal").record(end - replayStart);
+
+        recoveryMs = TimeUnit.NANOSECONDS.toMillis(end - start);
+        System.out.println("Loaded " + users.size() + " users and " + summaries.size() + " rooms ("
+                + rooms.size() + " in memory), replayed " + replayed + " journal records in " + recoveryMs + " ms");
+    }
+
+    /**
+     * 启动时加载数据和重放日志的耗时（毫秒）
+     */
+    public long getRecoveryMs() {
+        return recoveryMs;
+    }
+
+    /**
+     * 存储操作耗时
+     */
+    static Histogram timer(String operation) {
+        return metrics.histogram("cardscore_storage_duration_seconds",
+                "Duration of storage load and save operations", 1e9, "operation", operation);
+    }
+
+    /**
+     * 重放快照之后的日志记录，返回重放的记录数
+     * 日志模式下重放的数据留到下一次快照写入，启动时间只与上次快照之后的变更量有关；
+     * 延迟写入模式（不再写日志）和旧版本的单文件日志则立即写入快照并删除日志
+     */
+    private int replayJournal(boolean writeBehind, Set<String> touchedUsers, Set<String> touchedRooms) {
+        Consumer<JournalEntry> replay = entry -> {
+            apply(entry);
+            forEachAffected(entry, touchedUsers::add, touchedRooms::add);
+        };
+        File legacyFile = new File(dataDir, LEGACY_JOURNAL_FILE);
+        int legacy = legacyFile.exists() ? Journal.replayFile(legacyFile, replay) : 0;
+        int replayed = legacy + journal.replay(readSnapshotSequence(), replay);
+        if (replayed == 0 && !legacyFile.exists()) {
+            return 0;
+        }
+
+        for (String roomId : touchedRooms) {
+            Room room = getRoom(roomId);
+            if (room != null && !room.verifyScores()) {
+                System.err.println("Score mismatch after replay, rebuilding: " + room.getId());
+                rooms.put(room.withRebuiltScores());
+            }
+        }
+        if (writeBehind || legacyFile.exists()) {
+            long sequence = journal.roll();
+            try {
+                flushDirty(touchedUsers, touchedRooms);
+            } catch (UncheckedIOException e) {
+                System.err.println("Failed to write snapshot after replay, keeping journal: " + e.getMessage());
+                return replayed;
+            }
+            writeSnapshotSequence(sequence);
+            journal.deleteSegmentsThrough(sequence);
+            if (legacyFile.exists() && !legacyFile.delete()) {
+                System.err.println("Failed to delete legacy journal: " + legacyFile);
+            }
+            touchedUsers.clear();
+            touchedRooms.clear();
+        }
+        return replayed;
+    }
+
+    /**
+     * 写入快照：checkpointSequence之前的日志记录涉及的用户和房间都已标记（标记在追加日志之前），
+     * 写入完成后记录快照覆盖的序号，再删除已覆盖的日志段；写入失败时由调度器重新标记，保留日志
+     */
+    private void checkpoint(Set<String> dirtyUserIds, Set<String> dirtyRoomIds) {
+        long start = System.nanoTime();
+        long sequence = checkpointSequence;
+        flushDirty(dirtyUserIds, dirtyRoomIds);
+        writeSnapshotSequence(sequence);
+        int deleted = journal.deleteSegmentsThrough(sequence);
+        timer("checkpoint").record(System.nanoTime() - start);
+        if (deleted > 0) {
+            System.out.println("Checkpoint at journal record " + sequence + ": saved " + dirtyUserIds.size()
+                    + " users and " + dirtyRoomIds.size() + " rooms, deleted " + deleted + " journal segments");
+        }
+    }
+
+    /**
+     * 读取最近一次快照覆盖的日志序号，没有快照时为0
+     */
+    private long readSnapshotSequence() {
+        File file = new File(dataDir, SNAPSHOT_FILE);
+        if (!file.exists()) {
+            return 0;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            JsonObject snapshot = JsonParser.parseReader(reader).getAsJsonObject();
+            return snapshot.get("sequence").getAsLong();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to read snapshot info, replaying whole journal: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private void writeSnapshotSequence(long sequence) {
+        JsonObject snapshot = new JsonObject();
+        snapshot.addProperty("sequence", sequence);
+        snapshot.addProperty("createdAt", System.currentTimeMillis());
+        try {
+            AtomicFiles.write(new File(dataDir, SNAPSHOT_FILE), writer -> gson.toJson(snapshot, writer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 将一条日志记录应用到内存数据
+     * 房间的变更生成新快照并替换缓存中的旧快照（对读取方原子可见，写入磁盘前不会被淘汰），
+     * 调用方持有该房间的锁，所以基于当前快照生成下一个快照不会丢失并发的变更
+     */
+    private void apply(JournalEntry entry) {
+        switch (entry.getType()) {
+            case JournalEntry.CREATE_USER:
+            case JournalEntry.UPDATE_USER:
+                putUser(entry.getUser());
+                break;
+            case JournalEntry.DELETE_USER: {
+                User removed = users.remove(entry.getUserId());
+                if (removed != null) {
+                    usersByName.remove(removed.getName(), removed);
+                    userOrder.remove(orderKey(removed.getCreatedAt(), removed.getId()));
+                }
+                break;
+            }
+            case JournalEntry.CREATE_ROOM:
+            case JournalEntry.UPDATE_ROOM: {
+                Room room = entry.getRoom();
+                Room current = getRoom(room.getId());
+                if (current != null && isApplied(current, entry)) {
+                    break;
+                }
+                long version = Math.max(room.getVersion(), current != null ? current.getVersion() : 0) + 1;
+                putRoom(room.withVersion(version, version));
+                entry.setVersion(version);
+                break;
+            }
+            case JournalEntry.DELETE_ROOM: {
+                RoomFileStore.IndexEntry removed = summaries.remove(entry.getRoomId());
+                rooms.remove(entry.getRoomId());
+                if (removed != null) {
+                    searchIndex.remove(removed.getId());
+                    roomOrder.remove(orderKey(removed.getCreatedAt(), removed.getId()));
+                }
+                break;
+            }
+            case JournalEntry.JOIN_ROOM: {
+                Room room = getRoom(entry.getRoomId());
+                // 已是成员时房间不变，版本号不递增（只更新用户的当前房间ID）
+                if (room != null && !isApplied(room, entry) && !room.getMemberIds().contains(entry.getUserId())) {
+                    entry.setVersion(publish(room.withMember(entry.getUserId())));
+                }
+                User user = users.get(entry.getUserId());
+                if (user != null) {
+                    user.setCurrentRoomId(entry.getRoomId());
+                }
+                break;
+            }
+            case JournalEntry.LEAVE_ROOM: {
+                Room room = getRoom(entry.getRoomId());
+                if (room != null && !isApplied(room, entry)) {
+                    entry.setVersion(publish(room.withoutMembers(List.of(entry.getUserId()))));
+                }
+                User user = users.get(entry.getUserId());
+                if (user != null && entry.getRoomId().equals(user.getCurrentRoomId())) {
+                    user.setCurrentRoomId(null);
+                }
+                break;
+            }
+            case JournalEntry.TRANSACTION: {
+                Room room = getRoom(entry.getRoomId());
+                if (room != null && !isApplied(room, entry)) {
+                    entry.setVersion(publish(room.withTransaction(entry.getTransaction())));
+                }
+                break;
+            }
+            case JournalEntry.TRANSACTION_BATCH: {
+                Room room = getRoom(entry.getRoomId());
+                if (room != null && !isApplied(room, entry)) {
+                    entry.setVersion(publish(room.withTransactions(entry.getTransactions())));
+                }
+                break;
+            }
+            default:
+                System.err.println("Unknown journal record: " + entry);
+        }
+    }
+
+    /**
+     * 房间快照是否已包含这条记录（快照写入时可能已包含快照序号之后的记录，重放时按房间版本号跳过）
+     * 用户的变更按顺序重放即可得到最终状态，不需要跳过
+     */
+    private static boolean isApplied(Room room, JournalEntry entry) {
+        return entry.getVersion() > 0 && room.getVersion() >= entry.getVersion();
+    }
+
+    /**
+     * 写入用户并维护用户名索引（同名用户保留最早创建的）
+     */
+    private void putUser(User user) {
+        User previous = users.put(user.getId(), user);
+        if (previous != null && previous != user && !previous.getName().equals(user.getName())) {
+            usersByName.remove(previous.getName(), previous);
+        }
+        userOrder.add(orderKey(user.getCreatedAt(), user.getId()));
+        usersByName.merge(user.getName(), user,
+                (current, candidate) -> current.equals(candidate) || candidate.getCreatedAt() < current.getCreatedAt()
+                        ? candidate : current);
+    }
+
+    /**
+     * 以递增的版本号发布房间的新快照（房间名和创建时间不变，不需要更新索引），返回新的版本号
+     */
+    private long publish(Room next) {
+        long version = next.getVersion() + 1;
+        Room published = next.withVersion(version);
+        rooms.put(published);
+        summaries.put(published.getId(), new RoomFileStore.IndexEntry(published));
+        return version;
+    }
+
+    /**
+     * 写入房间并维护摘要和搜索索引
+     */
+    private void putRoom(Room room) {
+        rooms.put(room);
+        indexRoom(new RoomFileStore.IndexEntry(room));
+    }
+
+    private void indexRoom(RoomFileStore.IndexEntry summary) {
+        String roomId = summary.getId();
+        summaries.put(roomId, summary);
+        searchIndex.put(roomId, summary.getName());
+        roomOrder.add(orderKey(summary.getCreatedAt(), roomId));
+    }
+
+    /**
+     * 分页排序键：定长的创建时间 + ID，字符串顺序即 (createdAt, id) 顺序
+     */
+    private static String orderKey(long createdAt, String id) {
+        return String.format("%019d:%s", createdAt, id);
+    }
+
+    /**
+     * 按排序键取一页数据，after为上一页返回的游标
+     */
+    private static <T> Page<T> page(NavigableSet<String> order, Function<String, T> source, String after, int limit) {
+        String afterKey = Page.decodeCursor(after);
+        if (afterKey != null && (afterKey.length() < 20 || afterKey.charAt(19) != ':')) {
+            throw new IllegalArgumentException("Invalid cursor: " + after);
+        }
+        NavigableSet<String> tail = afterKey == null ? order : order.tailSet(afterKey, false);
+
+        List<T> items = new ArrayList<>(Math.min(limit, 64));
+        String lastKey = null;
+        boolean hasMore = false;
+        for (String key : tail) {
+            if (items.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            T item = source.apply(key.substring(key.indexOf(':') + 1));
+            if (item != null) {
+                items.add(item);
+                lastKey = key;
+            }
+        }
+        return new Page<>(items, hasMore ? Page.encodeCursor(lastKey) : null);
+    }
+
+    /**
+     * 应用变更并持久化：默认追加到事务日志，延迟写入模式下只标记脏数据
+     * 在所属房间（或用户）的锁内追加日志并应用，保证同一房间的日志顺序与内存中的变更顺序一致。
+     * 日志追加成功后才应用到内存：追加失败时抛出UncheckedIOException，内存数据不变，请求失败。
+     * 不在这里等待fsync，返回记录的序号（延迟写入模式下为0）：业务层可能在外层持有同一把房间锁，
+     * 由调用方在释放所有锁后调用awaitDurable，等待期间同一房间和其他房间的请求可以继续写入并加入同一次提交
+     */
+    private long record(JournalEntry entry) {
+        Lock lock = lockFor(entry);
+        lock.lock();
+        try {
+            if (flusher != null) {
+                apply(entry);
+                markDirty(flusher, entry);
+                return 0;
+            }
+            assignVersion(entry);
+            // 快照切换日志段时，旧段中的每条记录都已应用到内存并标记（先标记再追加）
+            checkpointGate.readLock().lock();
+            try {
+                markDirty(checkpointer, entry);
+                long sequence = journal.append(entry);
+                apply(entry);
+                return sequence;
+            } finally {
+                checkpointGate.readLock().unlock();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 追加日志前确定房间变更后的版本号（与apply发布的版本号相同），重放时据此跳过快照已包含的记录
+     */
+    private void assignVersion(JournalEntry entry) {
+        if (entry.getRoom() != null) {
+            Room current = getRoom(entry.getRoom().getId());
+            entry.setVersion(Math.max(entry.getRoom().getVersion(), current != null ? current.getVersion() : 0) + 1);
+        } else if (entry.getRoomId() != null && !JournalEntry.DELETE_ROOM.equals(entry.getType())) {
+            Room current = getRoom(entry.getRoomId());
+            if (current != null) {
+                entry.setVersion(current.getVersion() + 1);
+            }
+        }
+    }
+
+    /**
+     * 切换日志段，记录本次快照覆盖到的序号：等待正在追加的记录应用到内存后再切换
+     */
+    private void rollForCheckpoint() {
+        checkpointGate.writeLock().lock();
+        try {
+            checkpointSequence = journal.roll();
+        } finally {
+            checkpointGate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 等待序号及之前的日志记录持久化（只在GROUP模式下等待），不能在持有房间锁时调用
+     * fsync失败时抛出UncheckedIOException，请求按失败返回（变更已在内存中，由下一次快照写入）
+     */
+    public void awaitDurable(long sequence) {
+        if (sequence > 0) {
+            journal.awaitDurable(sequence);
+        }
+    }
+
+    /**
+     * 记录所属的锁：涉及房间的按房间加锁，否则按用户加锁
+     */
+    private Lock lockFor(JournalEntry entry) {
+        if (entry.getRoom() != null) {
+            return roomLocks.get(entry.getRoom().getId());
+        }
+        if (entry.getRoomId() != null) {
+            return roomLocks.get(entry.getRoomId());
+        }
+        return userLocks.get(entry.getUser() != null ? entry.getUser().getId() : entry.getUserId());
+    }
+
+    /**
+     * 房间的锁，业务层在校验和修改需要原子执行时持有（可重入，内部的写操作会再次获取同一把锁）
+     */
+    public Lock getRoomLock(String roomId) {
+        return roomLocks.get(roomId);
+    }
+
+
+    private static void markDirty(WriteBehindFlusher target, JournalEntry entry) {
+        forEachAffected(entry, target::markUserDirty, target::markRoomDirty);
+    }
+
+    /**
+     * 找出一条记录涉及的用户和房间
+     */
+    private static void forEachAffected(JournalEntry entry, Consumer<String> userIds, Consumer<String> roomIds) {
+        if (entry.getUser() != null) {
+            userIds.accept(entry.getUser().getId());
+        }
+        if (entry.getUserId() != null) {
+            userIds.accept(entry.getUserId());
+        }
+        if (entry.getRoom() != null) {
+            roomIds.accept(entry.getRoom().getId());
+        }
+        if (entry.getRoomId() != null) {
+            roomIds.accept(entry.getRoomId());
+        }
+    }
+
+    /**
+     * 写入脏数据：只重写发生变化的房间文件，不同房间并行写入
+     */
+    private void flushDirty(Set<String> dirtyUserIds, Set<String> dirtyRoomIds) {
+        long start = System.nanoTime();
+        AtomicInteger failures = new AtomicInteger();
+        long bytes = 0;
+        if (!dirtyUserIds.isEmpty()) {
+            try {
+                bytes += writeUsers();
+            } catch (IOException e) {
+                System.err.println("Failed to save users: " + e.getMessage());
+                failures.incrementAndGet();
+            }
+        }
+        if (!dirtyRoomIds.isEmpty()) {
+            bytes += dirtyRoomIds.parallelStream().mapToLong(roomId -> {
+                if (!summaries.containsKey(roomId)) {
+                    rooms.remove(roomId);
+                    roomStore.delete(roomId);
+                    return 0;
+                }
+                // 脏房间不会被淘汰，不在内存中说明已经写入过
+                Room room = rooms.getIfPresent(roomId);
+                if (room == null) {
+                    return 0;
+                }
+                try {
+                    long written = roomStore.write(room);
+                    rooms.markClean(roomId, room);
+                    return written;
+                } catch (IOException e) {
+                    System.err.println("Failed to save room " + roomId + ": " + e.getMessage());
+                    failures.incrementAndGet();
+                    return 0;
+                }
+            }).sum();
+            bytes += roomStore.flushIndex();
+        }
+        flushBytes.record(bytes);
+        timer("flush").record(System.nanoTime() - start);
+        if (failures.get() > 0) {
+            throw new UncheckedIOException(new IOException(failures.get() + " files failed to save"));
+        }
+    }
+
+    /**
+     * 关闭存储，写入所有未持久化的数据（日志模式下写入最后一次快照，下次启动不需要重放）
+     */
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+        }
+        journal.close();
     }
 
     /**
      * 加载用户数据
      */
     private void loadUsers() {
-        File file = new File(DATA_DIR, USERS_FILE);
+        // 优先读取配置格式的文件，切换格式后第一次启动时读取另一种格式
+        StorageCodec format = codec;
+        File file = new File(dataDir, USERS_FILE + codec.getSuffix());
+        if (!file.exists()) {
+            format = otherCodec;
+            file = new File(dataDir, USERS_FILE + otherCodec.getSuffix());
+        }
         if (!file.exists()) {
             return;
         }
 
-        try (Reader reader = new FileReader(file)) {
-            Type type = new TypeToken<List<User>>(){}.getType();
-            List<User> userList = gson.fromJson(reader, type);
-            if (userList != null) {
-                for (User user : userList) {
-                    users.put(user.getId(), user);
-                }
+        try {
+            for (User user : format.readUsers(file)) {
+                putUser(user);
             }
         } catch (IOException e) {
             System.err.println("Failed to load users: " + e.getMessage());
@@ -83,51 +627,98 @@ public class LocalStorage {
     }
 
     /**
-     * 加载房间数据
+     * 加载房间数据：只读取索引和摘要日志，房间本身在第一次访问时加载（摘要与房间文件不一致的房间启动时单独加载）
+     * 没有索引时加载全部房间一次并写入索引；首次运行时从旧的 rooms.json 迁移到按房间分文件存储
      */
     private void loadRooms() {
-        File file = new File(DATA_DIR, ROOMS_FILE);
-        if (!file.exists()) {
+        File legacyFile = new File(dataDir, ROOMS_FILE);
+        if (roomStore.isEmpty() && legacyFile.exists()) {
+            migrateLegacyRooms(legacyFile);
             return;
         }
 
-        try (Reader reader = new FileReader(file)) {
+        List<RoomFileStore.IndexEntry> index = roomStore.loadIndex(rooms::putLoaded);
+        if (index != null) {
+            index.forEach(this::indexRoom);
+        } else {
+            for (Room room : roomStore.loadAll()) {
+                rooms.putLoaded(room);
+                indexRoom(new RoomFileStore.IndexEntry(room));
+            }
+        }
+        roomStore.flushIndex();
+    }
+
+    private void migrateLegacyRooms(File legacyFile) {
+        try (Reader reader = new FileReader(legacyFile)) {
             Type type = new TypeToken<List<Room>>(){}.getType();
             List<Room> roomList = gson.fromJson(reader, type);
             if (roomList != null) {
                 for (Room room : roomList) {
-                    rooms.put(room.getId(), room);
+                    putRoom(room);
                 }
             }
         } catch (IOException e) {
             System.err.println("Failed to load rooms: " + e.getMessage());
+            return;
+        }
+
+        saveRooms();
+        File backup = new File(dataDir, ROOMS_FILE + ".bak");
+        if (!legacyFile.renameTo(backup)) {
+            System.err.println("Failed to rename legacy rooms file: " + legacyFile);
         }
+        System.out.println("Migrated " + summaries.size() + " rooms to per-room files");
     }
 
     /**
-     * 保存用户数据
+     * 保存用户数据，返回写入的字节数
      */
-    public synchronized void saveUsers() {
-        File file = new File(DATA_DIR, USERS_FILE);
-        try (Writer writer = new FileWriter(file)) {
-            List<User> userList = new ArrayList<>(users.values());
-            gson.toJson(userList, writer);
+    public synchronized long saveUsers() {
+        try {
+            return writeUsers();
         } catch (IOException e) {
             System.err.println("Failed to save users: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private synchronized long writeUsers() throws IOException {
+        long start = System.nanoTime();
+        List<User> userList = new ArrayList<>(users.values());
+        long bytes = AtomicFiles.writeBytes(new File(dataDir, USERS_FILE + codec.getSuffix()),
+                out -> codec.writeUsers(userList, out));
+        File other = new File(dataDir, USERS_FILE + otherCodec.getSuffix());
+        if (other.exists() && !other.delete()) {
+            System.err.println("Failed to delete users file: " + other);
         }
+        timer("save_users").record(System.nanoTime() - start);
+        return bytes;
     }
 
     /**
-     * 保存房间数据
+     * 保存房间数据，返回写入的字节数
      */
-    public synchronized void saveRooms() {
-        File file = new File(DATA_DIR, ROOMS_FILE);
-        try (Writer writer = new FileWriter(file)) {
-            List<Room> roomList = new ArrayList<>(rooms.values());
-            gson.toJson(roomList, writer);
-        } catch (IOException e) {
-            System.err.println("Failed to save rooms: " + e.getMessage());
-        }
+    public synchronized long saveRooms() {
+        long start = System.nanoTime();
+        long bytes = summaries.keySet().parallelStream().mapToLong(roomId -> {
+            Room room = rooms.peek(roomId);
+            if (room == null) {
+                return 0;
+            }
+            try {
+                long written = roomStore.write(room);
+                rooms.markClean(roomId, room);
+                return written;
+            } catch (IOException e) {
+                System.err.println("Failed to save room " + roomId + ": " + e.getMessage());
+                return 0;
+            }
+        }).sum();
+        bytes += roomStore.flushIndex();
+        flushBytes.record(bytes);
+        timer("save_rooms").record(System.nanoTime() - start);
+        return bytes;
     }
 
     // User operations
@@ -139,64 +730,305 @@ public class LocalStorage {
         return new ArrayList<>(users.values());
     }
 
+    public int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * 按创建时间分页获取用户
+     */
+    public Page<User> getUsersPage(String after, int limit) {
+        return page(userOrder, users::get, after, limit);
+    }
+
     public User getUserByName(String name) {
-        return users.values().stream()
-                .filter(u -> u.getName().equals(name))
-                .findFirst()
-                .orElse(null);
+        return usersByName.get(name);
+    }
+
+    /**
+     * 按用户名获取用户，不存在则创建（并发创建同名用户时只有一个会成功）
+     * 同名用户的创建按用户名锁串行；日志追加成功后才放入内存，追加失败时内存不变
+     */
+    public User getOrCreateUser(String name, Function<String, User> factory) {
+        User existing = usersByName.get(name);
+        if (existing != null) {
+            return existing;
+        }
+
+        User created;
+        long sequence;
+        Lock lock = userNameLocks.get(name);
+        lock.lock();
+        try {
+            existing = usersByName.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            created = factory.apply(name);
+            sequence = record(JournalEntry.createUser(created));
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+        return created;
     }
 
     public void addUser(User user) {
-        users.put(user.getId(), user);
-        saveUsers();
+        awaitDurable(record(JournalEntry.createUser(user)));
     }
 
     public void updateUser(User user) {
-        users.put(user.getId(), user);
-        saveUsers();
+        awaitDurable(record(JournalEntry.updateUser(user)));
     }
 
     public void deleteUser(String id) {
-        users.remove(id);
-        saveUsers();
+        awaitDurable(record(JournalEntry.deleteUser(id)));
+    }
+
+    /**
+     * 从房间中移除已不存在的用户（roomId -> 用户ID），返回实际移除的成员数
+     * 每个房间在自己的锁内重新校验，和其他变更一样通过record在锁内追加日志并应用，
+     * 保证同一房间的日志按版本号顺序写入；全部追加后等待一次持久化（同一次组提交）。
+     * 追加失败时抛出异常，之前的移除已经写入日志
+     */
+    public int removeMissingMembers(Map<String, ? extends Collection<String>> memberIdsByRoom) {
+        int removed = 0;
+        long sequence = 0;
+        for (Map.Entry<String, ? extends Collection<String>> candidates : memberIdsByRoom.entrySet()) {
+            String roomId = candidates.getKey();
+            Lock lock = roomLocks.get(roomId);
+            lock.lock();
+            try {
+                for (String userId : candidates.getValue()) {
+                    Room room = getRoom(roomId);
+                    if (room == null || users.containsKey(userId) || !room.getMemberIds().contains(userId)) {
+                        continue;
+                    }
+                    sequence = Math.max(sequence, record(JournalEntry.leaveRoom(roomId, userId)));
+                    removed++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        awaitDurable(sequence);
+        return removed;
     }
 
     // Room operations
+
+    /**
+     * 获取房间，不在内存中时从房间文件加载（已删除的房间没有摘要，不会访问磁盘）
+     */
     public Room getRoom(String id) {
+        if (!summaries.containsKey(id)) {
+            return null;
+        }
         return rooms.get(id);
     }
 
-    public List<Room> getAllRooms() {
-        return new ArrayList<>(rooms.values());
+    /**
+     * 获取所有房间的摘要（不读取房间文件）
+     */
+    public List<RoomSummary> getAllRooms() {
+        List<RoomSummary> result = new ArrayList<>(summaries.size());
+        for (RoomFileStore.IndexEntry summary : summaries.values()) {
+            result.add(summary.toSummary());
+        }
+        return result;
+    }
+
+    /**
+     * 所有房间的摘要（名称、创建时间、成员和转账记录数），不需要加载房间
+     */
+    public Collection<RoomFileStore.IndexEntry> getRoomSummaries() {
+        return new ArrayList<>(summaries.values());
+    }
+
+    public int getRoomCount() {
+        return summaries.size();
+    }
+
+    /**
+     * 内存中的房间数
+     */
+    public int getCachedRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * 内存中房间的总权重（转账记录数+房间数）
+     */
+    public long getCachedRoomWeight() {
+        return rooms.getWeight();
+    }
+
+    /**
+     * 所有房间的转账记录总数
+     */
+    public long getTransactionCount() {
+        long count = 0;
+        for (RoomFileStore.IndexEntry summary : summaries.values()) {
+            count += summary.getTransactionCount();
+        }
+        return count;
     }
 
-    public List<Room> searchRooms(String keyword) {
-        if (keyword == null || keyword.trim().isEmpty()) {
-            return getAllRooms();
+    /**
+     * 转账记录最多的房间的记录数
+     */
+    public int getLargestRoomSize() {
+        int largest = 0;
+        for (RoomFileStore.IndexEntry summary : summaries.values()) {
+            largest = Math.max(largest, summary.getTransactionCount());
         }
-        
-        List<Room> result = new ArrayList<>();
-        String lowerKeyword = keyword.toLowerCase();
-        for (Room room : rooms.values()) {
-            if (room.getName().toLowerCase().contains(lowerKeyword)) {
-                result.add(room);
+        return largest;
+    }
+
+    /**
+     * 按创建时间分页获取房间摘要（不读取房间文件）
+     */
+    public Page<RoomSummary> getRoomsPage(String after, int limit) {
+        return page(roomOrder, this::getRoomSummary, after, limit);
+    }
+
+    private RoomSummary getRoomSummary(String id) {
+        RoomFileStore.IndexEntry summary = summaries.get(id);
+        return summary != null ? summary.toSummary() : null;
+    }
+
+    /**
+     * 搜索房间的第一页（最近创建的在前）
+     */
+    public List<RoomSummary> searchRooms(String keyword) {
+        return searchRooms(keyword, null, Page.DEFAULT_LIMIT, SORT_RECENT).getItems();
+    }
+
+    /**
+     * 通过n-gram索引搜索房间，按最近创建或成员数排序，返回一页摘要（不读取房间文件）
+     * 不对全部匹配排序：按最近创建排序且匹配的房间较多时，沿创建时间倒序遍历，取满一页即停止；
+     * 其他情况用只保留limit+1个的堆从候选中选出一页。
+     * 按成员数排序的游标包含成员数，翻页期间成员数变化的房间可能重复或遗漏
+     */
+    public Page<RoomSummary> searchRooms(String keyword, String after, int limit, String sort) {
+        boolean byMembers = SORT_MEMBERS.equals(sort);
+        String afterKey = Page.decodeCursor(after);
+        int afterMembers = Integer.MAX_VALUE;
+        if (afterKey != null && byMembers) {
+            int slash = afterKey.indexOf('/');
+            if (slash <= 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + after);
             }
+            afterMembers = Integer.parseInt(afterKey.substring(0, slash));
+            afterKey = afterKey.substring(slash + 1);
         }
-        return result;
+        if (afterKey != null && (afterKey.length() < 20 || afterKey.charAt(19) != ':')) {
+            throw new IllegalArgumentException("Invalid cursor: " + after);
+        }
+
+        Predicate<String> matcher = searchIndex.matcher(keyword);
+        boolean common = (long) searchIndex.candidateCount(keyword) * SEARCH_SCAN_RATIO > summaries.size();
+        if (!byMembers && common) {
+            NavigableSet<String> order = afterKey == null
+                    ? roomOrder.descendingSet() : roomOrder.headSet(afterKey, false).descendingSet();
+            return page(order, id -> matcher.test(id) ? getRoomSummary(id) : null, null, limit);
+        }
+
+        Comparator<RoomFileStore.IndexEntry> recent = Comparator.comparingLong(RoomFileStore.IndexEntry::getCreatedAt)
+                .thenComparing(RoomFileStore.IndexEntry::getId).reversed();
+        Comparator<RoomFileStore.IndexEntry> order = byMembers
+                ? Comparator.comparingInt((RoomFileStore.IndexEntry r) -> r.getMemberIds().size()).reversed()
+                        .thenComparing(recent)
+                : recent;
+        long afterCreatedAt = afterKey != null ? Long.parseLong(afterKey.substring(0, 19)) : 0;
+        String afterId = afterKey != null ? afterKey.substring(20) : null;
+
+        // 堆顶是已选中的排序最靠后的一个，多保留一个用于判断是否还有下一页
+        PriorityQueue<RoomFileStore.IndexEntry> top = new PriorityQueue<>(limit + 2, order.reversed());
+        Collection<RoomFileStore.IndexEntry> candidates = common ? summaries.values() : new ArrayList<>();
+        if (!common) {
+            for (String roomId : searchIndex.search(keyword)) {
+                RoomFileStore.IndexEntry summary = summaries.get(roomId);
+                if (summary != null) {
+                    candidates.add(summary);
+                }
+            }
+        }
+        for (RoomFileStore.IndexEntry summary : candidates) {
+            if (common && !matcher.test(summary.getId())) {
+                continue;
+            }
+            if (afterKey != null) {
+                int members = summary.getMemberIds().size();
+                int byTime = Long.compare(summary.getCreatedAt(), afterCreatedAt);
+                boolean older = byTime < 0 || (byTime == 0 && summary.getId().compareTo(afterId) < 0);
+                if (byMembers ? members > afterMembers || (members == afterMembers && !older) : !older) {
+                    continue;
+                }
+            }
+            top.add(summary);
+            if (top.size() > limit + 1) {
+                top.poll();
+            }
+        }
+        boolean hasMore = top.size() > limit;
+        if (hasMore) {
+            top.poll();
+        }
+
+        List<RoomFileStore.IndexEntry> selected = new ArrayList<>(top);
+        selected.sort(order);
+        List<RoomSummary> items = new ArrayList<>(selected.size());
+        for (RoomFileStore.IndexEntry summary : selected) {
+            items.add(summary.toSummary());
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            RoomFileStore.IndexEntry last = selected.get(selected.size() - 1);
+            String key = orderKey(last.getCreatedAt(), last.getId());
+            nextCursor = Page.encodeCursor(byMembers ? last.getMemberIds().size() + "/" + key : key);
+        }
+        return new Page<>(items, nextCursor);
     }
 
     public void addRoom(Room room) {
-        rooms.put(room.getId(), room);
-        saveRooms();
+        awaitDurable(record(JournalEntry.createRoom(room)));
     }
 
     public void updateRoom(Room room) {
-        rooms.put(room.getId(), room);
-        saveRooms();
+        awaitDurable(record(JournalEntry.updateRoom(room)));
     }
 
     public void deleteRoom(String id) {
-        rooms.remove(id);
-        saveRooms();
+        awaitDurable(record(JournalEntry.deleteRoom(id)));
+    }
+
+    /**
+     * 用户加入房间（同时更新用户的当前房间）
+     * 以下房间变更由业务层在房间锁内调用，返回日志序号，释放锁后调用awaitDurable等待持久化
+     */
+    public long joinRoom(String roomId, String userId) {
+        return record(JournalEntry.joinRoom(roomId, userId));
+    }
+
+    /**
+     * 用户离开房间（如果是当前房间则清除）
+     */
+    public long leaveRoom(String roomId, String userId) {
+        return record(JournalEntry.leaveRoom(roomId, userId));
+    }
+
+    /**
+     * 添加转账记录
+     */
+    public long addTransaction(Transaction transaction) {
+        return record(JournalEntry.transaction(transaction));
+    }
+
+    /**
+     * 原子地添加同一房间的多条转账记录（版本号只递增一次，只写一条日志）
+     */
+    public long addTransactions(String roomId, List<Transaction> transactions) {
+        return record(JournalEntry.transactionBatch(roomId, transactions));
     }
 }
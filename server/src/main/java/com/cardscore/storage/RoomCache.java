@@ -0,0 +1,255 @@
+package com.cardscore.storage;
+
+import com.cardscore.metrics.MetricsRegistry;
+import com.cardscore.model.Room;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 常驻内存的房间缓存，按权重（转账记录数+1）限制总量，未命中时从房间文件加载
+ * 淘汰使用CLOCK（二次机会）算法近似LRU：读取只设置访问标记，不加锁；淘汰时从队首依次检查，
+ * 有访问标记的清除标记后移到队尾，没有的淘汰。
+ * 有未写入磁盘的变更的房间（脏房间）不会被淘汰，写入后由markClean解除
+ */
+public class RoomCache {
+    private static final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private static final LongAdder hits = metrics.counter(
+            "cardscore_room_cache_hits_total", "Room lookups served from memory");
+    private static final LongAdder misses = metrics.counter(
+            "cardscore_room_cache_misses_total", "Room lookups that loaded the room from disk");
+    private static final LongAdder evictions = metrics.counter(
+            "cardscore_room_cache_evictions_total", "Rooms evicted from memory");
+    private static final int LOAD_LOCK_STRIPES = 64;
+
+    /**
+     * 加载房间文件的回调，房间不存在时返回null
+     */
+    public interface Loader {
+        Room load(String roomId);
+    }
+
+    private static final class Entry {
+        private final String id;
+        private volatile Room room;
+        private volatile boolean dirty;
+        private volatile boolean referenced;
+        private volatile boolean removed;
+        private long weight;  // 在所属键的compute中修改
+
+        private Entry(String id) {
+            this.id = id;
+        }
+    }
+
+    private final Loader loader;
+    private final long maxWeight;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ArrayDeque<Entry> clock = new ArrayDeque<>();  // 淘汰顺序，访问时加锁
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    // 同一房间的加载串行：房间不在缓存中时文件就是最新数据，加载期间不会有写入
+    private final StripedLocks loadLocks = new StripedLocks(LOAD_LOCK_STRIPES);
+
+    /**
+     * @param maxWeight 常驻房间的总权重上限，小于等于0表示不限制
+     */
+    public RoomCache(Loader loader, long maxWeight) {
+        this.loader = loader;
+        this.maxWeight = maxWeight;
+    }
+
+    private static long weigh(Room room) {
+        return room.getTransactions().size() + 1L;
+    }
+
+    /**
+     * 获取房间，不在内存中时从文件加载并放入缓存
+     */
+    public Room get(String roomId) {
+        Entry entry = entries.get(roomId);
+        if (entry != null) {
+            hits.increment();
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            return entry.room;
+        }
+
+        misses.increment();
+        Lock lock = loadLocks.get(roomId);
+        lock.lock();
+        try {
+            entry = entries.get(roomId);
+            if (entry != null) {
+                return entry.room;
+            }
+            long start = System.nanoTime();
+            Room room = loader.load(roomId);
+            LocalStorage.timer("load_room").record(System.nanoTime() - start);
+            if (room == null) {
+                return null;
+            }
+            return insert(room, false).room;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取房间但不放入缓存（保存所有房间等批量读取使用，不挤出常用的房间）
+     */
+    public Room peek(String roomId) {
+        Entry entry = entries.get(roomId);
+        return entry != null ? entry.room : loader.load(roomId);
+    }
+
+    /**
+     * 内存中的房间，不在内存中时返回null
+     */
+    public Room getIfPresent(String roomId) {
+        Entry entry = entries.get(roomId);
+        return entry != null ? entry.room : null;
+    }
+
+    /**
+     * 放入变更后的房间快照，标记为脏数据直到写入磁盘
+     */
+    public void put(Room room) {
+        insert(room, true);
+    }
+
+    /**
+     * 放入从磁盘加载的房间（已在缓存中则保留缓存中的快照）
+     */
+    public void putLoaded(Room room) {
+        insert(room, false);
+    }
+
+    private Entry insert(Room room, boolean dirty) {
+        Entry[] created = new Entry[1];
+        Entry entry = entries.compute(room.getId(), (id, current) -> {
+            if (current != null && !dirty) {
+                return current;
+            }
+            Entry target = current;
+            if (target == null) {
+                target = new Entry(id);
+                created[0] = target;
+            }
+            long newWeight = weigh(room);
+            weight.addAndGet(newWeight - target.weight);
+            target.weight = newWeight;
+            target.room = room;
+            target.dirty |= dirty;
+            target.referenced = true;
+            return target;
+        });
+        if (created[0] != null) {
+            synchronized (clock) {
+                clock.addLast(created[0]);
+            }
+        }
+        evictIfNeeded();
+        return entry;
+    }
+
+    /**
+     * 房间快照已写入磁盘：缓存中仍是这个快照时解除固定，之后可以被淘汰
+     */
+    public void markClean(String roomId, Room written) {
+        entries.computeIfPresent(roomId, (id, entry) -> {
+            if (entry.room == written) {
+                entry.dirty = false;
+            }
+            return entry;
+        });
+        evictIfNeeded();
+    }
+
+    /**
+     * 移除已删除的房间
+     */
+    public void remove(String roomId) {
+        entries.computeIfPresent(roomId, (id, entry) -> {
+            entry.removed = true;
+            weight.addAndGet(-entry.weight);
+            return null;
+        });
+    }
+
+    /**
+     * 总权重超过上限时淘汰到上限的90%，同一时间只有一个线程执行
+     * 脏房间移到队尾跳过；全部检查两轮仍无法淘汰（都是脏房间或都被频繁访问）时暂时超出上限
+     */
+    private void evictIfNeeded() {
+        if (maxWeight <= 0 || weight.get() <= maxWeight || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long target = maxWeight - maxWeight / 10;
+            int budget;
+            synchronized (clock) {
+                budget = clock.size() * 2;
+            }
+            while (weight.get() > target && budget-- > 0) {
+                Entry candidate;
+                synchronized (clock) {
+                    candidate = clock.pollFirst();
+                }
+                if (candidate == null) {
+                    break;
+                }
+                if (candidate.removed) {
+                    continue;
+                }
+                if (candidate.referenced || candidate.dirty) {
+                    candidate.referenced = false;
+                    requeue(candidate);
+                    continue;
+                }
+                // 判断和移除在同一个compute中，不会与put(dirty)交错
+                entries.computeIfPresent(candidate.id, (id, entry) -> {
+                    if (entry != candidate || entry.dirty) {
+                        return entry;
+                    }
+                    entry.removed = true;
+                    weight.addAndGet(-entry.weight);
+                    return null;
+                });
+                if (candidate.removed) {
+                    evictions.increment();
+                } else {
+                    requeue(candidate);
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void requeue(Entry entry) {
+        synchronized (clock) {
+            clock.addLast(entry);
+        }
+    }
+
+    /**
+     * 内存中的房间数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 内存中房间的总权重
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+}
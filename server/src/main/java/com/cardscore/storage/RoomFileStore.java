@@ -0,0 +1,450 @@
+package com.cardscore.storage;
+
+import com.cardscore.json.JsonCodec;
+import com.cardscore.model.Room;
+import com.cardscore.model.RoomSummary;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 按房间分文件存储：每个房间保存为 rooms/&lt;id&gt;.json（或二进制格式的 .bin），另有 rooms/index.json 记录房间列表
+ * 保存一个房间只重写该房间的文件，不同房间可以并行写入；两种格式的文件都能读取，保存时改写为配置的格式。
+ * 索引只保存不变的字段（ID、名称、创建时间），只在创建、删除房间时重写；成员和转账记录数会随每次写入变化，
+ * 追加到 rooms/summaries.log，每个房间以最后一条为准，记录数过多时压缩重写
+ */
+public class RoomFileStore {
+    private static final String ROOMS_DIR = "rooms";
+    private static final String INDEX_FILE = "index.json";
+    private static final String SUMMARY_LOG = "summaries.log";
+    private static final int MIN_COMPACT_RECORDS = 1024;
+
+    private final File dir;
+    private final Gson gson;
+    private final Gson lineGson;            // 摘要日志每条记录一行
+    private final StorageCodec codec;       // 写入使用的格式
+    private final StorageCodec otherCodec;  // 另一种格式，只用于读取旧文件
+    private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+    private volatile boolean indexDirty;
+    private final Map<String, SummaryRecord> summaries = new ConcurrentHashMap<>();     // 已写入摘要日志的最后一条
+    private final Map<String, SummaryRecord> pendingSummaries = new ConcurrentHashMap<>();  // 等待追加的摘要
+    private int summaryRecords;  // 摘要日志中的记录数，在flushIndex中修改
+    private boolean summaryLogTorn;  // 摘要日志末尾有不完整的记录，下一次写入时重写整个文件
+
+    /**
+     * 房间索引条目（房间摘要）：常驻内存，列表、搜索排序和统计不需要加载房间本身
+     * 成员和转账记录数不写入索引文件（保存在摘要日志中），比较时也只比较索引文件中的字段
+     */
+    public static class IndexEntry {
+        private String id;
+        private String name;
+        private long createdAt;
+        private transient List<String> memberIds;
+        private transient int transactionCount;
+
+        public IndexEntry() {
+        }
+
+        public IndexEntry(Room room) {
+            this.id = room.getId();
+            this.name = room.getName();
+            this.createdAt = room.getCreatedAt();
+            this.memberIds = room.getMemberIds();
+            this.transactionCount = room.getTransactions().size();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public List<String> getMemberIds() {
+            return memberIds;
+        }
+
+        public int getTransactionCount() {
+            return transactionCount;
+        }
+
+        public RoomSummary toSummary() {
+            return new RoomSummary(id, name, createdAt, memberIds, transactionCount);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            IndexEntry that = (IndexEntry) o;
+            return createdAt == that.createdAt && Objects.equals(id, that.id) && Objects.equals(name, that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name, createdAt);
+        }
+    }
+
+    /**
+     * 摘要日志中的一条记录，附带写入后房间文件的大小和修改时间：
+     * 启动时与房间文件核对，不一致（写入房间文件后、追加摘要前崩溃）时重新读取房间文件
+     */
+    private static class SummaryRecord {
+        private String id;
+        private List<String> memberIds;
+        private int transactionCount;
+        private long fileLength;
+        private long fileModified;  // 纳秒
+
+        SummaryRecord() {
+        }
+
+        SummaryRecord(Room room, BasicFileAttributes file) {
+            this.id = room.getId();
+            this.memberIds = room.getMemberIds();
+            this.transactionCount = room.getTransactions().size();
+            this.fileLength = file.size();
+            this.fileModified = file.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        }
+
+        boolean matches(BasicFileAttributes file) {
+            return fileLength == file.size() && fileModified == file.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public RoomFileStore(String dataDir, Gson gson, StorageCodec codec, StorageCodec otherCodec) {
+        this.dir = new File(dataDir, ROOMS_DIR);
+        this.gson = gson;
+        this.lineGson = JsonCodec.create();
+        this.codec = codec;
+        this.otherCodec = otherCodec;
+        if (!dir.exists() && !dir.mkdirs()) {
+            System.err.println("Failed to create rooms directory: " + dir);
+        }
+        AtomicFiles.deleteTempFiles(dir);
+    }
+
+    /**
+     * 是否还没有任何房间文件（用于从旧的 rooms.json 迁移）
+     */
+    public boolean isEmpty() {
+        String[] names = dir.list((d, name) -> codecOf(name) != null);
+        return names == null || names.length == 0;
+    }
+
+    /**
+     * 并行加载所有房间文件
+     */
+    public List<Room> loadAll() {
+        File[] files = dir.listFiles((d, name) -> codecOf(name) != null);
+        if (files == null) {
+            return new ArrayList<>();
+        }
+
+        // 切换格式时如果在删除旧文件前崩溃，同一房间会有两个文件，取版本号较大的
+        Map<String, Room> loaded = Arrays.stream(files)
+                .parallel()
+                .map(this::load)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toMap(Room::getId, room -> room,
+                        (a, b) -> a.getVersion() >= b.getVersion() ? a : b));
+        for (Room room : loaded.values()) {
+            IndexEntry entry = new IndexEntry(room);
+            if (!entry.equals(index.put(room.getId(), entry))) {
+                indexDirty = true;
+            }
+            addSummary(room, attributes(roomFile(room.getId(), codec)));
+        }
+        return new ArrayList<>(loaded.values());
+    }
+
+    private Room load(File file) {
+        try {
+            return codecOf(file.getName()).readRoom(file);
+        } catch (IOException e) {
+            System.err.println("Failed to load room " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 加载单个房间（两种格式都尝试），没有房间文件时返回null
+     */
+    public Room read(String roomId) {
+        File file = roomFile(roomId, codec);
+        if (!file.exists()) {
+            file = roomFile(roomId, otherCodec);
+        }
+        return file.exists() ? load(file) : null;
+    }
+
+    /**
+     * 读取索引和摘要日志作为房间摘要，并与目录中的房间文件核对：
+     * 删除房间后还没来得及重写索引时丢弃多出的条目；写入房间文件后还没来得及写索引或追加摘要的房间
+     * （摘要记录的文件大小、修改时间与文件不一致）单独加载。没有索引时返回null，由调用方加载全部房间
+     */
+    public List<IndexEntry> loadIndex(Consumer<Room> reloaded) {
+        File indexFile = new File(dir, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return null;
+        }
+        IndexEntry[] entries;
+        try (Reader reader = new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8)) {
+            entries = gson.fromJson(reader, IndexEntry[].class);
+        } catch (IOException | JsonParseException e) {
+            System.err.println("Failed to load room index, loading all rooms: " + e.getMessage());
+            return null;
+        }
+        if (entries == null) {
+            return null;
+        }
+        Map<String, SummaryRecord> logged = readSummaries();
+
+        Map<String, BasicFileAttributes> files = new HashMap<>();
+        File[] roomFiles = dir.listFiles((d, name) -> codecOf(name) != null);
+        if (roomFiles != null) {
+            for (File file : roomFiles) {
+                BasicFileAttributes attributes = attributes(file);
+                if (attributes != null) {
+                    files.put(file.getName().substring(0, file.getName().lastIndexOf('.')), attributes);
+                }
+            }
+        }
+        List<IndexEntry> loaded = new ArrayList<>(entries.length);
+        for (IndexEntry entry : entries) {
+            BasicFileAttributes file = files.remove(entry.getId());
+            if (file == null) {
+                indexDirty = true;
+                continue;
+            }
+            SummaryRecord summary = logged.get(entry.getId());
+            if (summary != null && summary.matches(file)) {
+                entry.memberIds = summary.memberIds;
+                entry.transactionCount = summary.transactionCount;
+                summaries.put(entry.getId(), summary);
+                index.put(entry.getId(), entry);
+                loaded.add(entry);
+            } else {
+                files.put(entry.getId(), file);
+            }
+        }
+        for (String roomId : files.keySet()) {
+            Room room = read(roomId);
+            if (room != null) {
+                IndexEntry entry = new IndexEntry(room);
+                if (!entry.equals(index.put(roomId, entry))) {
+                    indexDirty = true;
+                }
+                addSummary(room, attributes(roomFile(roomId, codec)));
+                loaded.add(entry);
+                reloaded.accept(room);
+            }
+        }
+        summaryRecords = logged.size();
+        return loaded;
+    }
+
+    /**
+     * 读取摘要日志，每个房间保留最后一条，遇到不完整的记录（如写入时崩溃）则停止
+     */
+    private Map<String, SummaryRecord> readSummaries() {
+        Map<String, SummaryRecord> logged = new HashMap<>();
+        File file = new File(dir, SUMMARY_LOG);
+        if (!file.exists()) {
+            return logged;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                SummaryRecord record;
+                try {
+                    record = lineGson.fromJson(line, SummaryRecord.class);
+                } catch (JsonParseException | NumberFormatException e) {
+                    summaryLogTorn = true;
+                    break;
+                }
+                if (record != null && record.id != null && record.memberIds != null) {
+                    logged.put(record.id, record);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read room summaries, reloading rooms: " + e.getMessage());
+        }
+        return logged;
+    }
+
+    /**
+     * 文件的大小和修改时间，文件不存在或无法读取时返回null
+     */
+    private static BasicFileAttributes attributes(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void addSummary(Room room, BasicFileAttributes file) {
+        if (file != null) {
+            pendingSummaries.put(room.getId(), new SummaryRecord(room, file));
+        }
+    }
+
+    /**
+     * 按文件后缀判断房间文件的格式，不是房间文件时返回null
+     */
+    private StorageCodec codecOf(String fileName) {
+        if (fileName.equals(INDEX_FILE)) {
+            return null;
+        }
+        if (fileName.endsWith(codec.getSuffix())) {
+            return codec;
+        }
+        return fileName.endsWith(otherCodec.getSuffix()) ? otherCodec : null;
+    }
+
+    /**
+     * 保存单个房间文件，返回写入的字节数
+     */
+    public long save(Room room) {
+        try {
+            return write(room);
+        } catch (IOException e) {
+            System.err.println("Failed to save room " + room.getId() + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 保存单个房间文件，失败时抛出异常，返回写入的字节数
+     */
+    public long write(Room room) throws IOException {
+        long bytes = AtomicFiles.writeBytes(roomFile(room.getId(), codec), out -> codec.writeRoom(room, out));
+        deleteFile(roomFile(room.getId(), otherCodec));
+
+        IndexEntry entry = new IndexEntry(room);
+        if (!entry.equals(index.put(room.getId(), entry))) {
+            indexDirty = true;
+        }
+        addSummary(room, attributes(roomFile(room.getId(), codec)));
+        return bytes;
+    }
+
+    /**
+     * 并行保存多个房间，返回写入的字节数
+     */
+    public long saveAll(Collection<Room> rooms) {
+        return rooms.parallelStream().mapToLong(this::save).sum();
+    }
+
+    /**
+     * 删除房间文件
+     */
+    public void delete(String roomId) {
+        deleteFile(roomFile(roomId, codec));
+        deleteFile(roomFile(roomId, otherCodec));
+        if (index.remove(roomId) != null) {
+            indexDirty = true;
+        }
+        pendingSummaries.remove(roomId);
+        summaries.remove(roomId);
+    }
+
+    /**
+     * 房间列表有变化时重写索引文件，追加写入过的房间的摘要，返回写入的字节数
+     * 摘要日志中的记录数超过房间数的两倍时重写为每个房间一条
+     */
+    public synchronized long flushIndex() {
+        long bytes = 0;
+        if (indexDirty) {
+            indexDirty = false;
+            try {
+                bytes += AtomicFiles.write(new File(dir, INDEX_FILE),
+                        writer -> gson.toJson(new ArrayList<>(index.values()), writer));
+            } catch (IOException e) {
+                indexDirty = true;
+                System.err.println("Failed to save room index: " + e.getMessage());
+            }
+        }
+        if (pendingSummaries.isEmpty()) {
+            return bytes;
+        }
+
+        List<SummaryRecord> records = new ArrayList<>(pendingSummaries.size());
+        for (String roomId : new ArrayList<>(pendingSummaries.keySet())) {
+            SummaryRecord record = pendingSummaries.remove(roomId);
+            if (record != null && index.containsKey(roomId)) {
+                records.add(record);
+            }
+        }
+        try {
+            if (summaryLogTorn || summaryRecords + records.size() > Math.max(MIN_COMPACT_RECORDS, index.size() * 2L)) {
+                records.forEach(record -> summaries.put(record.id, record));
+                List<SummaryRecord> all = new ArrayList<>(summaries.values());
+                bytes += AtomicFiles.write(new File(dir, SUMMARY_LOG), writer -> {
+                    for (SummaryRecord record : all) {
+                        writer.write(lineGson.toJson(record));
+                        writer.write('\n');
+                    }
+                });
+                summaryRecords = all.size();
+                summaryLogTorn = false;
+            } else {
+                StringBuilder lines = new StringBuilder();
+                for (SummaryRecord record : records) {
+                    lines.append(lineGson.toJson(record)).append('\n');
+                }
+                byte[] data = lines.toString().getBytes(StandardCharsets.UTF_8);
+                // 不需要fsync：丢失的摘要在启动时按房间文件核对出来并重新读取
+                try (FileOutputStream out = new FileOutputStream(new File(dir, SUMMARY_LOG), true)) {
+                    out.write(data);
+                }
+                records.forEach(record -> summaries.put(record.id, record));
+                summaryRecords += records.size();
+                bytes += data.length;
+            }
+        } catch (IOException e) {
+            records.forEach(record -> pendingSummaries.putIfAbsent(record.id, record));
+            System.err.println("Failed to save room summaries: " + e.getMessage());
+        }
+        return bytes;
+    }
+
+    private File roomFile(String roomId, StorageCodec format) {
+        return new File(dir, roomId + format.getSuffix());
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            System.err.println("Failed to delete room file: " + file);
+        }
+    }
+}
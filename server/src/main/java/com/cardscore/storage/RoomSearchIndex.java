@@ -0,0 +1,156 @@
+package com.cardscore.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 房间名倒排索引
+ * 以单字和相邻两字（n-gram）为词项，不依赖分词，适用于中文房间名的子串搜索
+ */
+public class RoomSearchIndex {
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+    private final Map<String, String> names = new ConcurrentHashMap<>();  // 房间ID -> 规范化后的房间名
+
+    /**
+     * 添加或更新房间名
+     */
+    public synchronized void put(String roomId, String name) {
+        String normalized = normalize(name);
+        String previous = names.put(roomId, normalized);
+        if (normalized.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            for (String gram : grams(previous)) {
+                removePosting(gram, roomId);
+            }
+        }
+        for (String gram : grams(normalized)) {
+            postings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(roomId);
+        }
+    }
+
+    /**
+     * 移除房间
+     */
+    public synchronized void remove(String roomId) {
+        String previous = names.remove(roomId);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : grams(previous)) {
+            removePosting(gram, roomId);
+        }
+    }
+
+    private void removePosting(String gram, String roomId) {
+        postings.computeIfPresent(gram, (g, ids) -> {
+            ids.remove(roomId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * 搜索房间名包含关键字的房间ID（不区分大小写）
+     */
+    public List<String> search(String keyword) {
+        String normalized = normalize(keyword);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>(names.keySet());
+        }
+
+        // 取所有词项中最短的倒排表作为候选集，再用完整子串校验去掉误匹配
+        Set<String> candidates = null;
+        for (String gram : queryGrams(normalized)) {
+            Set<String> ids = postings.get(gram);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            if (candidates == null || ids.size() < candidates.size()) {
+                candidates = ids;
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String roomId : candidates) {
+            String name = names.get(roomId);
+            if (name != null && name.contains(normalized)) {
+                result.add(roomId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 搜索的候选数量上限（最短倒排表的长度，关键字为空时为房间数），不做子串校验
+     */
+    public int candidateCount(String keyword) {
+        String normalized = normalize(keyword);
+        if (normalized.isEmpty()) {
+            return names.size();
+        }
+        int count = Integer.MAX_VALUE;
+        for (String gram : queryGrams(normalized)) {
+            Set<String> ids = postings.get(gram);
+            if (ids == null) {
+                return 0;
+            }
+            count = Math.min(count, ids.size());
+        }
+        return count;
+    }
+
+    /**
+     * 判断房间名是否包含关键字（不区分大小写），用于按其他顺序遍历房间时逐个过滤
+     */
+    public Predicate<String> matcher(String keyword) {
+        String normalized = normalize(keyword);
+        return roomId -> {
+            String name = names.get(roomId);
+            return name != null && name.contains(normalized);
+        };
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 索引词项：所有单字和相邻两字
+     */
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            grams.add(text.substring(i, i + 1));
+            if (i + 2 <= text.length()) {
+                grams.add(text.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 查询词项：单字关键字用单字，否则用所有相邻两字
+     */
+    private static Set<String> queryGrams(String keyword) {
+        if (keyword.length() == 1) {
+            return Collections.singleton(keyword);
+        }
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 2 <= keyword.length(); i++) {
+            grams.add(keyword.substring(i, i + 2));
+        }
+        return grams;
+    }
+}
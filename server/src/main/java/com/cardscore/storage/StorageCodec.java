@@ -0,0 +1,37 @@
+package com.cardscore.storage;
+
+import com.cardscore.model.Room;
+import com.cardscore.model.User;
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 用户文件和房间文件的编码格式
+ */
+public interface StorageCodec {
+
+    /**
+     * 文件后缀（含点号）
+     */
+    String getSuffix();
+
+    Room readRoom(File file) throws IOException;
+
+    void writeRoom(Room room, OutputStream out) throws IOException;
+
+    List<User> readUsers(File file) throws IOException;
+
+    void writeUsers(Collection<User> users, OutputStream out) throws IOException;
+
+    /**
+     * 按配置的格式创建编码器
+     */
+    static StorageCodec create(StorageConfig.Format format, Gson gson) {
+        return format == StorageConfig.Format.BINARY ? new BinaryStorageCodec() : new JsonStorageCodec(gson);
+    }
+}
@@ -0,0 +1,221 @@
+package com.cardscore.storage;
+
+/**
+ * 存储配置，通过JVM系统属性设置，例如：
+ * java -Dcardscore.storage.writeBehind=true -jar card-score-server.jar
+ */
+public class StorageConfig {
+    private static final String PREFIX = "cardscore.storage.";
+
+    /**
+     * 事务日志的持久化级别
+     */
+    public enum Durability {
+        SYNC,   // 每条记录fsync后才返回
+        GROUP,  // 提交窗口内的并发写入共用一次fsync，fsync后才返回
+        ASYNC;  // 只写入操作系统缓冲区，不等待fsync
+
+        /**
+         * 解析配置值（不区分大小写），无法识别时返回null
+         */
+        public static Durability parse(String value) {
+            for (Durability durability : values()) {
+                if (durability.name().equalsIgnoreCase(value.trim())) {
+                    return durability;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 用户文件和房间文件的格式
+     */
+    public enum Format {
+        JSON,   // 可读的JSON文本
+        BINARY; // 紧凑的二进制格式，见BinaryStorageCodec
+
+        /**
+         * 解析配置值（不区分大小写），无法识别时返回null
+         */
+        public static Format parse(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value.trim())) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private String dataDir = "data";
+    private boolean writeBehind = false;
+    private long flushIntervalMs = 1000;
+    private int flushThreshold = 200;
+    private long reconcileIntervalMs = 60000;
+    private Durability durability = Durability.GROUP;
+    private long groupCommitWindowMs = 2;
+    private long snapshotIntervalMs = 60000;
+    private int snapshotThreshold = 10000;
+    private Format format = Format.JSON;
+    private long roomCacheMaxWeight = 5_000_000;
+
+    public StorageConfig() {
+    }
+
+    /**
+     * 从系统属性读取配置，未设置的项使用默认值
+     */
+    public static StorageConfig fromSystemProperties() {
+        StorageConfig config = new StorageConfig();
+        config.dataDir = System.getProperty(PREFIX + "dataDir", config.dataDir);
+        config.writeBehind = Boolean.parseBoolean(
+                System.getProperty(PREFIX + "writeBehind", String.valueOf(config.writeBehind)));
+        config.flushIntervalMs = getLong(PREFIX + "flushIntervalMs", config.flushIntervalMs);
+        config.flushThreshold = (int) getLong(PREFIX + "flushThreshold", config.flushThreshold);
+        config.reconcileIntervalMs = getLong(PREFIX + "reconcileIntervalMs", config.reconcileIntervalMs);
+        String durability = System.getProperty(PREFIX + "durability");
+        if (durability != null && !durability.trim().isEmpty()) {
+            Durability parsed = Durability.parse(durability);
+            if (parsed != null) {
+                config.durability = parsed;
+            } else {
+                System.err.println("Invalid value for " + PREFIX + "durability: " + durability
+                        + ", using default: " + config.durability.name().toLowerCase());
+            }
+        }
+        config.groupCommitWindowMs = getLong(PREFIX + "groupCommitWindowMs", config.groupCommitWindowMs);
+        config.snapshotIntervalMs = getLong(PREFIX + "snapshotIntervalMs", config.snapshotIntervalMs);
+        config.snapshotThreshold = (int) getLong(PREFIX + "snapshotThreshold", config.snapshotThreshold);
+        config.roomCacheMaxWeight = getLong(PREFIX + "roomCacheMaxWeight", config.roomCacheMaxWeight);
+        String format = System.getProperty(PREFIX + "format");
+        if (format != null && !format.trim().isEmpty()) {
+            Format parsed = Format.parse(format);
+            if (parsed != null) {
+                config.format = parsed;
+            } else {
+                System.err.println("Invalid value for " + PREFIX + "format: " + format
+                        + ", using default: " + config.format.name().toLowerCase());
+            }
+        }
+        return config;
+    }
+
+    static long getLong(String key, long defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    public void setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public int getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    public void setFlushThreshold(int flushThreshold) {
+        this.flushThreshold = flushThreshold;
+    }
+
+    public long getReconcileIntervalMs() {
+        return reconcileIntervalMs;
+    }
+
+    public void setReconcileIntervalMs(long reconcileIntervalMs) {
+        this.reconcileIntervalMs = reconcileIntervalMs;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    public long getGroupCommitWindowMs() {
+        return groupCommitWindowMs;
+    }
+
+    public void setGroupCommitWindowMs(long groupCommitWindowMs) {
+        this.groupCommitWindowMs = groupCommitWindowMs;
+    }
+
+    public long getSnapshotIntervalMs() {
+        return snapshotIntervalMs;
+    }
+
+    public void setSnapshotIntervalMs(long snapshotIntervalMs) {
+        this.snapshotIntervalMs = snapshotIntervalMs;
+    }
+
+    public int getSnapshotThreshold() {
+        return snapshotThreshold;
+    }
+
+    public void setSnapshotThreshold(int snapshotThreshold) {
+        this.snapshotThreshold = snapshotThreshold;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    public long getRoomCacheMaxWeight() {
+        return roomCacheMaxWeight;
+    }
+
+    public void setRoomCacheMaxWeight(long roomCacheMaxWeight) {
+        this.roomCacheMaxWeight = roomCacheMaxWeight;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageConfig{" +
+                "dataDir='" + dataDir + '\'' +
+                ", writeBehind=" + writeBehind +
+                ", flushIntervalMs=" + flushIntervalMs +
+                ", flushThreshold=" + flushThreshold +
+                ", reconcileIntervalMs=" + reconcileIntervalMs +
+                ", durability=" + durability +
+                ", groupCommitWindowMs=" + groupCommitWindowMs +
+                ", snapshotIntervalMs=" + snapshotIntervalMs +
+                ", snapshotThreshold=" + snapshotThreshold +
+                ", format=" + format +
+                ", roomCacheMaxWeight=" + roomCacheMaxWeight +
+                '}';
+    }
+}
@@ -0,0 +1,64 @@
+package com.cardscore.storage;
+
+import java.io.File;
+
+/**
+ * 离线转换数据目录的存储格式（服务器停止时运行）：
+ * java -cp card-score-server.jar com.cardscore.storage.StorageConverter data binary
+ * 按目标格式加载数据（两种格式的文件都能读取，同时重放日志），全部重写为目标格式并删除原格式的文件
+ */
+public class StorageConverter {
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: StorageConverter <dataDir> json|binary");
+            System.exit(1);
+        }
+        StorageConfig.Format format = StorageConfig.Format.parse(args[1]);
+        if (format == null) {
+            System.err.println("Unknown format: " + args[1]);
+            System.exit(1);
+        }
+        File dataDir = new File(args[0]);
+        if (!dataDir.isDirectory()) {
+            System.err.println("Data directory not found: " + dataDir);
+            System.exit(1);
+        }
+
+        long before = dataSize(dataDir);
+        StorageConfig config = new StorageConfig();
+        config.setDataDir(dataDir.getPath());
+        config.setFormat(format);
+        long start = System.nanoTime();
+        LocalStorage storage = new LocalStorage(config);
+        storage.saveUsers();
+        storage.saveRooms();
+        storage.close();
+        long after = dataSize(dataDir);
+
+        System.out.println("Converted " + storage.getUserCount() + " users and " + storage.getRoomCount()
+                + " rooms to " + format.name().toLowerCase() + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        System.out.println("Users and room files: " + before + " bytes -> " + after + " bytes");
+    }
+
+    /**
+     * 用户文件和房间文件的总字节数（不含索引和日志）
+     */
+    private static long dataSize(File dataDir) {
+        long size = 0;
+        File[] userFiles = dataDir.listFiles((d, name) -> name.startsWith("users."));
+        if (userFiles != null) {
+            for (File file : userFiles) {
+                size += file.length();
+            }
+        }
+        File[] roomFiles = new File(dataDir, "rooms").listFiles(
+                (d, name) -> !name.equals("index.json") && !name.equals("summaries.log"));
+        if (roomFiles != null) {
+            for (File file : roomFiles) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+}
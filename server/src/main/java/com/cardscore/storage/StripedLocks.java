@@ -0,0 +1,33 @@
+package com.cardscore.storage;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分段锁：按键的哈希映射到固定数量的锁
+ * 同一个键的操作串行执行，不同键（大概率映射到不同的锁）可以完全并行，不需要全局锁
+ */
+public class StripedLocks {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes 锁的数量，向上取整为2的幂
+     */
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 获取键对应的锁（可重入）
+     */
+    public ReentrantLock get(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= (hash >>> 16);
+        return locks[hash & mask];
+    }
+}
@@ -0,0 +1,119 @@
+package com.cardscore.storage;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 延迟写入调度器
+ * 变更只标记脏数据，由后台线程按时间间隔或脏数据数量阈值合并写入磁盘
+ */
+public class WriteBehindFlusher {
+
+    /**
+     * 实际执行写入的回调
+     */
+    public interface FlushHandler {
+        void flush(Set<String> dirtyUserIds, Set<String> dirtyRoomIds);
+    }
+
+    private final FlushHandler handler;
+    private final Runnable beforeDrain;
+    private final int threshold;
+    private final Set<String> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    private final ScheduledExecutorService executor;
+
+    public WriteBehindFlusher(FlushHandler handler, long intervalMs, int threshold) {
+        this(handler, () -> { }, intervalMs, threshold, "storage-flusher");
+    }
+
+    /**
+     * beforeDrain在每次取出脏数据之前执行（如切换日志段），在它之前标记的脏数据都会包含在这次写入中
+     */
+    public WriteBehindFlusher(FlushHandler handler, Runnable beforeDrain, long intervalMs, int threshold,
+                              String threadName) {
+        this.handler = handler;
+        this.beforeDrain = beforeDrain;
+        this.threshold = threshold;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void markUserDirty(String userId) {
+        dirtyUsers.add(userId);
+        checkThreshold();
+    }
+
+    public void markRoomDirty(String roomId) {
+        dirtyRooms.add(roomId);
+        checkThreshold();
+    }
+
+    /**
+     * 脏数据达到阈值时立即安排一次写入（已安排则不重复）
+     */
+    private void checkThreshold() {
+        if (dirtyUsers.size() + dirtyRooms.size() >= threshold
+                && flushQueued.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushQueued.set(false);
+            }
+        }
+    }
+
+    /**
+     * 写入当前所有脏数据，写入期间产生的新变更留到下一次
+     */
+    public synchronized void flush() {
+        flushQueued.set(false);
+        beforeDrain.run();
+        Set<String> users = drain(dirtyUsers);
+        Set<String> rooms = drain(dirtyRooms);
+        if (users.isEmpty() && rooms.isEmpty()) {
+            return;
+        }
+        try {
+            handler.flush(users, rooms);
+        } catch (RuntimeException e) {
+            System.err.println("Write-behind flush failed: " + e.getMessage());
+            dirtyUsers.addAll(users);
+            dirtyRooms.addAll(rooms);
+        }
+    }
+
+    private static Set<String> drain(Set<String> source) {
+        Set<String> drained = new HashSet<>();
+        for (String id : source) {
+            if (source.remove(id)) {
+                drained.add(id);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * 停止调度并写入剩余的脏数据
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}